@@ -0,0 +1,89 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel;
+
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.client.runtime.SessionFactoryImpl;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.apache.chemistry.opencmis.commons.SessionParameter;
+import org.apache.chemistry.opencmis.commons.data.ContentStream;
+import org.apache.chemistry.opencmis.commons.enums.BindingType;
+import org.apache.chemistry.opencmis.commons.enums.VersioningState;
+
+import java.io.ByteArrayInputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Creates the content the benchmarks run against in the in memory repository of
+ * {@link BenchmarkServiceFactory}.
+ */
+public final class BenchmarkRepository {
+    public static final String REPOSITORY_ID = "A1";
+    public static final String ENDPOINT_URI = "cmis://local?bindingType=local&localFactory="
+            + BenchmarkServiceFactory.class.getName() + "&repositoryId=" + REPOSITORY_ID;
+
+    private BenchmarkRepository() {
+    }
+
+    public static Session createSession() {
+        Map<String, String> parameter = new HashMap<String, String>();
+        parameter.put(SessionParameter.BINDING_TYPE, BindingType.LOCAL.value());
+        parameter.put(SessionParameter.LOCAL_FACTORY, BenchmarkServiceFactory.class.getName());
+        parameter.put(SessionParameter.REPOSITORY_ID, REPOSITORY_ID);
+        return SessionFactoryImpl.newInstance().createSession(parameter);
+    }
+
+    /**
+     * Creates a folder named <tt>name</tt> holding <tt>foldersPerFolder</tt> subfolders on each of
+     * <tt>depth</tt> levels below it, and <tt>documentsPerFolder</tt> documents in each folder.
+     *
+     * @return the number of nodes created
+     */
+    public static int createTree(Session session, Folder parent, String name, int depth, int foldersPerFolder,
+                                 int documentsPerFolder) {
+        Folder folder = createFolder(parent, name);
+        int count = 1;
+        for (int i = 0; i < documentsPerFolder; i++) {
+            createDocument(session, folder, name + "-" + i + ".txt", new byte[128]);
+            count++;
+        }
+        if (depth > 0) {
+            for (int i = 0; i < foldersPerFolder; i++) {
+                count += createTree(session, folder, name + "-" + i, depth - 1, foldersPerFolder, documentsPerFolder);
+            }
+        }
+        return count;
+    }
+
+    public static Folder createFolder(Folder parent, String name) {
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put(PropertyIds.OBJECT_TYPE_ID, "cmis:folder");
+        properties.put(PropertyIds.NAME, name);
+        return parent.createFolder(properties);
+    }
+
+    public static void createDocument(Session session, Folder parent, String name, byte[] content) {
+        ContentStream contentStream = session.getObjectFactory()
+                .createContentStream(name, content.length, "application/octet-stream", new ByteArrayInputStream(content));
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put(PropertyIds.OBJECT_TYPE_ID, "cmis:document");
+        properties.put(PropertyIds.NAME, name);
+        parent.createDocument(properties, contentStream, VersioningState.NONE);
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel;
+
+import org.apache.chemistry.opencmis.commons.impl.server.AbstractServiceFactory;
+import org.apache.chemistry.opencmis.commons.server.CallContext;
+import org.apache.chemistry.opencmis.commons.server.CmisService;
+import org.apache.chemistry.opencmis.inmemory.server.InMemoryServiceFactoryImpl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Serves the in memory repository through the local binding. The local binding creates a
+ * factory for every session, so all of them share one in memory repository here, otherwise
+ * the endpoint under test would not see the content created by the benchmark.
+ */
+public class BenchmarkServiceFactory extends AbstractServiceFactory {
+    private static final String REPOSITORY_ID_PARAMETER = "InMemoryServer.RepositoryId";
+    private static InMemoryServiceFactoryImpl repository;
+
+    @Override
+    public void init(Map<String, String> parameters) {
+        synchronized (BenchmarkServiceFactory.class) {
+            if (repository == null) {
+                Map<String, String> repositoryParameters = new HashMap<String, String>(parameters);
+                repositoryParameters.put(REPOSITORY_ID_PARAMETER, BenchmarkRepository.REPOSITORY_ID);
+                repository = new InMemoryServiceFactoryImpl();
+                repository.init(repositoryParameters);
+            }
+        }
+    }
+
+    @Override
+    public CmisService getService(CallContext context) {
+        return repository.getService(context);
+    }
+}
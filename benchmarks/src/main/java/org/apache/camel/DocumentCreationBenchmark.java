@@ -0,0 +1,93 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel;
+
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stores documents of the given size with the producer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DocumentCreationBenchmark {
+
+    @Param({"1024", "1048576"})
+    public int bodySize;
+
+    @Param({"", "folderCacheSize=10"})
+    public String options;
+
+    private CamelContext camelContext;
+    private Producer producer;
+    private byte[] body;
+    private long documentNumber;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Session session = BenchmarkRepository.createSession();
+        BenchmarkRepository.createFolder(session.getRootFolder(), "documents");
+        body = new byte[bodySize];
+
+        camelContext = new DefaultCamelContext();
+        camelContext.start();
+        producer = camelContext.getEndpoint(BenchmarkRepository.ENDPOINT_URI + (options.length() > 0 ? "&" + options : ""))
+                .createProducer();
+        producer.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        producer.stop();
+        camelContext.stop();
+    }
+
+    @Benchmark
+    public Object createDocument() throws Exception {
+        Exchange exchange = new DefaultExchange(camelContext);
+        exchange.getIn().setHeader("cmis:name", "document-" + documentNumber++ + ".bin");
+        exchange.getIn().setHeader("cmis:objectTypeId", "cmis:document");
+        exchange.getIn().setHeader(CamelCMISConstants.CMIS_FOLDER_PATH, "/documents");
+        exchange.getIn().setHeader(Exchange.CONTENT_TYPE, "application/octet-stream");
+        exchange.getIn().setBody(body);
+        producer.process(exchange);
+        if (exchange.getException() != null) {
+            throw exchange.getException();
+        }
+        return exchange.getOut().getBody();
+    }
+}
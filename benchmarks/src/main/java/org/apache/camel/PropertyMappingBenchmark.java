@@ -0,0 +1,103 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel;
+
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.apache.chemistry.opencmis.commons.data.PropertyData;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.PropertyDateTimeImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.PropertyIdImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.PropertyIntegerImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.PropertyStringImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.GregorianCalendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Maps the properties of one object as returned by the repository into a query row map or a
+ * header map. Run with <tt>-prof gc</tt> to see the bytes allocated per object.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PropertyMappingBenchmark {
+
+    /**
+     * Custom properties on top of the usual cmis ones.
+     */
+    @Param({"0", "20"})
+    public int customProperties;
+
+    private List<PropertyData<?>> properties;
+    private Set<String> projection;
+
+    @Setup
+    public void setUp() {
+        properties = new ArrayList<PropertyData<?>>();
+        properties.add(new PropertyIdImpl(PropertyIds.OBJECT_ID, "100"));
+        properties.add(new PropertyIdImpl(PropertyIds.BASE_TYPE_ID, "cmis:document"));
+        properties.add(new PropertyIdImpl(PropertyIds.OBJECT_TYPE_ID, "cmis:document"));
+        properties.add(new PropertyStringImpl(PropertyIds.NAME, "document.txt"));
+        properties.add(new PropertyStringImpl(PropertyIds.CREATED_BY, "admin"));
+        properties.add(new PropertyDateTimeImpl(PropertyIds.CREATION_DATE, new GregorianCalendar()));
+        properties.add(new PropertyStringImpl(PropertyIds.LAST_MODIFIED_BY, "admin"));
+        properties.add(new PropertyDateTimeImpl(PropertyIds.LAST_MODIFICATION_DATE, new GregorianCalendar()));
+        properties.add(new PropertyStringImpl(PropertyIds.CHANGE_TOKEN, "1"));
+        properties.add(new PropertyIntegerImpl(PropertyIds.CONTENT_STREAM_LENGTH, BigInteger.valueOf(128)));
+        properties.add(new PropertyStringImpl(PropertyIds.CONTENT_STREAM_MIME_TYPE, "text/plain"));
+        properties.add(new PropertyStringImpl(PropertyIds.CONTENT_STREAM_FILE_NAME, "document.txt"));
+        for (int i = 0; i < customProperties; i++) {
+            properties.add(new PropertyStringImpl("custom:property" + i, "value" + i));
+        }
+        projection = new HashSet<String>(Arrays.asList(PropertyIds.OBJECT_ID, PropertyIds.NAME, PropertyIds.LAST_MODIFICATION_DATE));
+    }
+
+    @Benchmark
+    public Map<String, Object> propertyDataToMap() {
+        return CMISHelper.propertyDataToMap(properties);
+    }
+
+    @Benchmark
+    public Map<String, Object> propertyDataToHeaders() {
+        return CMISHelper.propertyDataToHeaders(properties, null);
+    }
+
+    @Benchmark
+    public Map<String, Object> propertyDataToMapWithProjection() {
+        return CMISHelper.propertyDataToMap(properties, projection);
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel;
+
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls a whole folder tree of the given shape with the tree walker selected by the endpoint options.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TreePollBenchmark {
+
+    @Param({"3"})
+    public int depth;
+
+    @Param({"5"})
+    public int foldersPerFolder;
+
+    @Param({"10"})
+    public int documentsPerFolder;
+
+    @Param({"100"})
+    public int pageSize;
+
+    /**
+     * Further endpoint options, such as walkerThreads=4 or filter=cmis:name.
+     */
+    @Param({"", "prefetchDepth=2", "walkerThreads=4"})
+    public String options;
+
+    private CamelContext camelContext;
+    private CMISConsumer consumer;
+    private int nodes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Session session = BenchmarkRepository.createSession();
+        nodes = BenchmarkRepository.createTree(session, session.getRootFolder(), "tree", depth, foldersPerFolder, documentsPerFolder);
+
+        camelContext = new DefaultCamelContext();
+        camelContext.start();
+        String uri = BenchmarkRepository.ENDPOINT_URI + "&pageSize=" + pageSize + (options.length() > 0 ? "&" + options : "");
+        consumer = (CMISConsumer) camelContext.getEndpoint(uri).createConsumer(new Processor() {
+            public void process(Exchange exchange) throws Exception {
+                exchange.getIn().getHeader("cmis:name");
+            }
+        });
+        // polls are only triggered by the benchmark
+        consumer.setTimeUnit(TimeUnit.DAYS);
+        consumer.setInitialDelay(365);
+        consumer.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        consumer.stop();
+        camelContext.stop();
+    }
+
+    @Benchmark
+    public int pollTree() throws Exception {
+        int polled = consumer.poll();
+        if (polled < nodes) {
+            throw new IllegalStateException("Polled " + polled + " of " + nodes + " nodes");
+        }
+        return polled;
+    }
+}
@@ -24,18 +24,45 @@ import java.util.Map;
  * Represents the component that manages {@link CMISComponent}.
  */
 public class CMISComponent extends DefaultComponent {
+    private final CMISSessionRegistry sessionRegistry = new CMISSessionRegistry();
 
     protected Endpoint createEndpoint(String uri, String remaining, Map<String, Object> parameters) throws Exception {
         boolean queryMode = removeQueryMode(parameters);
 
         CMISSessionFacade sessionFacade = new CMISSessionFacade(remaining);
         setProperties(sessionFacade, parameters);
+        sessionFacade.setEndpointUri(uri);
+        sessionFacade.setSessionRegistry(sessionRegistry);
         sessionFacade.initSession();
         CMISEndpoint endpoint = new CMISEndpoint(uri, this, sessionFacade);
         endpoint.setQueryMode(queryMode);
         return endpoint;
     }
 
+    @Override
+    protected void doStop() throws Exception {
+        sessionRegistry.clear();
+        super.doStop();
+    }
+
+    /**
+     * Number of sessions shared by the endpoints with the same url, repository and credentials.
+     */
+    public void setSessionPoolSize(int sessionPoolSize) {
+        sessionRegistry.setPoolSize(sessionPoolSize);
+    }
+
+    /**
+     * Milliseconds after which a shared session is probed again before being handed out, 0 to never probe.
+     */
+    public void setSessionHealthCheckInterval(long sessionHealthCheckInterval) {
+        sessionRegistry.setHealthCheckInterval(sessionHealthCheckInterval);
+    }
+
+    CMISSessionRegistry getSessionRegistry() {
+        return sessionRegistry;
+    }
+
     private boolean removeQueryMode(Map<String, Object> parameters) {
         if (parameters.containsKey("queryMode")) {
             return Boolean.valueOf((String)parameters.remove("queryMode")) ;
@@ -17,11 +17,18 @@
 package org.apache.camel;
 
 import org.apache.camel.impl.ScheduledPollConsumer;
+import org.apache.camel.impl.SynchronizationAdapter;
+import org.apache.camel.spi.Synchronization;
+import org.apache.camel.util.AsyncProcessorHelper;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The CMIS consumer.
@@ -29,6 +36,12 @@ import java.util.Map;
 public class CMISConsumer extends ScheduledPollConsumer {
     private static final transient Log LOG = LogFactory.getLog(CMISConsumer.class);
     private CMISSessionFacade sessionFacade;
+    private ExecutorService walkerExecutorService;
+    private ExecutorService prefetchExecutorService;
+    private Semaphore inflightExchanges;
+    private ExecutorService[] shardWorkers;
+    private Semaphore pendingShardRows;
+    private final AtomicInteger failedExchanges = new AtomicInteger();
 
     public CMISConsumer(CMISEndpoint endpoint, Processor processor) {
         super(endpoint, processor);
@@ -39,17 +52,251 @@ public class CMISConsumer extends ScheduledPollConsumer {
         this.sessionFacade = sessionFacade;
     }
 
+    @Override
+    protected void doStart() throws Exception {
+        if (sessionFacade.getWalkerThreads() > 1) {
+            walkerExecutorService = getEndpoint().getCamelContext().getExecutorServiceStrategy()
+                    .newFixedThreadPool(this, "CMISTreeWalker", sessionFacade.getWalkerThreads());
+        }
+        if (sessionFacade.getPrefetchDepth() > 0) {
+            prefetchExecutorService = getEndpoint().getCamelContext().getExecutorServiceStrategy()
+                    .newFixedThreadPool(this, "CMISPagePrefetch", sessionFacade.getPrefetchDepth());
+        }
+        if (sessionFacade.getShardThreads() > 1) {
+            shardWorkers = new ExecutorService[sessionFacade.getShardThreads()];
+            for (int i = 0; i < shardWorkers.length; i++) {
+                shardWorkers[i] = getEndpoint().getCamelContext().getExecutorServiceStrategy()
+                        .newSingleThreadExecutor(this, "CMISShardWorker-" + i);
+            }
+            pendingShardRows = new Semaphore(maxPendingShardRows());
+        }
+        if (sessionFacade.getMaxInflightExchanges() > 0) {
+            inflightExchanges = new Semaphore(sessionFacade.getMaxInflightExchanges());
+        }
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        super.doStop();
+        sessionFacade.closeVersionIndex();
+        if (walkerExecutorService != null) {
+            getEndpoint().getCamelContext().getExecutorServiceStrategy().shutdownNow(walkerExecutorService);
+            walkerExecutorService = null;
+        }
+        if (prefetchExecutorService != null) {
+            getEndpoint().getCamelContext().getExecutorServiceStrategy().shutdownNow(prefetchExecutorService);
+            prefetchExecutorService = null;
+        }
+        if (shardWorkers != null) {
+            for (ExecutorService shardWorker : shardWorkers) {
+                getEndpoint().getCamelContext().getExecutorServiceStrategy().shutdownNow(shardWorker);
+            }
+            shardWorkers = null;
+        }
+    }
+
     @Override
     protected int poll() throws Exception {
-        return this.sessionFacade.poll(this);
+        failedExchanges.set(0);
+        try {
+            return this.sessionFacade.poll(this);
+        } finally {
+            awaitShardWorkers();
+            awaitInflightExchanges();
+        }
     }
 
+    /**
+     * Sends a query row from the worker thread its object id belongs to, so rows are processed by
+     * shardThreads threads while every object is always handled by the same one.
+     */
+    int sendShardedRow(String objectId, final Map<String, Object> properties, final InputStream inputStream) throws Exception {
+        if (shardWorkers == null) {
+            return sendExchangeWithPropsAndBody(properties, inputStream);
+        }
+        if (objectId == null) {
+            throw new RuntimeCamelException("Queries sent from shardThreads must select cmis:objectId");
+        }
+        // the rows of this node all share the same remainder of the shard count
+        int worker = (objectId.hashCode() & Integer.MAX_VALUE) / sessionFacade.getShardCount() % shardWorkers.length;
+        pendingShardRows.acquire();
+        try {
+            shardWorkers[worker].execute(new Runnable() {
+                public void run() {
+                    try {
+                        sendExchangeWithPropsAndBody(properties, inputStream);
+                    } catch (Exception e) {
+                        failedExchanges.incrementAndGet();
+                        getExceptionHandler().handleException("Error sending query row", e);
+                    } finally {
+                        pendingShardRows.release();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            pendingShardRows.release();
+            throw e;
+        }
+        return 1;
+    }
+
+    /**
+     * Waits until the shard workers have sent all the rows handed to them.
+     */
+    private void awaitShardWorkers() throws InterruptedException {
+        if (pendingShardRows != null) {
+            pendingShardRows.acquire(maxPendingShardRows());
+            pendingShardRows.release(maxPendingShardRows());
+        }
+    }
+
+    private int maxPendingShardRows() {
+        return sessionFacade.getShardThreads() * sessionFacade.getPageSize();
+    }
+
+    /**
+     * Sends the node to the route. With maxInflightExchanges the route is called asynchronously
+     * and this only blocks while that many exchanges are still being processed, so the next
+     * page can be fetched meanwhile.
+     */
     int sendExchangeWithPropsAndBody(Map<String, Object> properties, InputStream inputStream) throws Exception {
-        Exchange exchange = getEndpoint().createExchange();
+        return sendExchangeWithPropsAndBody(properties, inputStream, null);
+    }
+
+    /**
+     * Sends the node to the route like {@link #sendExchangeWithPropsAndBody(Map, InputStream)}, and
+     * tells the given synchronization, if any, whether the exchange completed without an exception
+     * once it is done, which with maxInflightExchanges happens on the thread finishing the exchange.
+     */
+    int sendExchangeWithPropsAndBody(Map<String, Object> properties, InputStream inputStream,
+                                     final Synchronization completion) throws Exception {
+        final Exchange exchange = getEndpoint().createExchange();
+        // header maps built by CMISHelper are used as they are instead of being copied
         exchange.getIn().setHeaders(properties);
-        exchange.getIn().setBody(inputStream);
+        exchange.getIn().setBody(cacheContent(exchange, inputStream));
         LOG.debug("Polling node : " + properties.get("cmis:name"));
-        getProcessor().process(exchange);
+        final CMISMetrics metrics = getMetrics();
+        metrics.objectEmitted();
+        if (inflightExchanges == null) {
+            metrics.exchangeStarted();
+            try {
+                getProcessor().process(exchange);
+            } catch (Exception e) {
+                failedExchanges.incrementAndGet();
+                if (completion != null) {
+                    completion.onFailure(exchange);
+                }
+                throw e;
+            } finally {
+                metrics.exchangeDone();
+            }
+            if (exchange.getException() != null) {
+                failedExchanges.incrementAndGet();
+                getExceptionHandler().handleException("Error processing exchange", exchange, exchange.getException());
+                if (completion != null) {
+                    completion.onFailure(exchange);
+                }
+            } else if (completion != null) {
+                completion.onComplete(exchange);
+            }
+            return 1;
+        }
+
+        inflightExchanges.acquire();
+        metrics.exchangeStarted();
+        try {
+            AsyncProcessorHelper.process(getAsyncProcessor(), exchange, new AsyncCallback() {
+                public void done(boolean doneSync) {
+                    try {
+                        if (exchange.getException() != null) {
+                            failedExchanges.incrementAndGet();
+                            getExceptionHandler().handleException("Error processing exchange", exchange, exchange.getException());
+                            if (completion != null) {
+                                completion.onFailure(exchange);
+                            }
+                        } else if (completion != null) {
+                            completion.onComplete(exchange);
+                        }
+                    } catch (RuntimeException e) {
+                        getExceptionHandler().handleException("Error completing exchange", exchange, e);
+                    } finally {
+                        metrics.exchangeDone();
+                        inflightExchanges.release();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            failedExchanges.incrementAndGet();
+            if (completion != null) {
+                completion.onFailure(exchange);
+            }
+            metrics.exchangeDone();
+            inflightExchanges.release();
+            throw e;
+        }
         return 1;
     }
+
+    /**
+     * With cacheContent the content is read completely before the exchange is sent. Spooled
+     * files are deleted once the exchange is done.
+     */
+    private Object cacheContent(Exchange exchange, InputStream inputStream) throws IOException {
+        ContentSpool contentSpool = sessionFacade.getContentSpool();
+        if (contentSpool == null || inputStream == null) {
+            return inputStream;
+        }
+        StreamCache content = contentSpool.spool(inputStream);
+        if (content instanceof SpooledContent) {
+            final SpooledContent spooledContent = (SpooledContent) content;
+            exchange.addOnCompletion(new SynchronizationAdapter() {
+                @Override
+                public void onDone(Exchange exchange) {
+                    spooledContent.delete();
+                }
+            });
+        }
+        return content;
+    }
+
+    /**
+     * Waits until the exchanges sent so far are done, so the progress of the poll can be saved
+     * without moving past an exchange still being processed.
+     *
+     * @return <tt>false</tt> if any exchange failed since the previous call, in which case the
+     *         progress must not be saved past it
+     */
+    boolean awaitExchanges() throws InterruptedException {
+        awaitShardWorkers();
+        awaitInflightExchanges();
+        return failedExchanges.getAndSet(0) == 0;
+    }
+
+    /**
+     * The poll is only over once all the exchanges it started are done.
+     */
+    private void awaitInflightExchanges() throws InterruptedException {
+        if (inflightExchanges != null) {
+            int maxInflightExchanges = sessionFacade.getMaxInflightExchanges();
+            inflightExchanges.acquire(maxInflightExchanges);
+            inflightExchanges.release(maxInflightExchanges);
+        }
+    }
+
+    CMISMetrics getMetrics() {
+        return sessionFacade.getMetrics();
+    }
+
+    CMISSessionFacade getSessionFacade() {
+        return sessionFacade;
+    }
+
+    ExecutorService getWalkerExecutorService() {
+        return walkerExecutorService;
+    }
+
+    ExecutorService getPrefetchExecutorService() {
+        return prefetchExecutorService;
+    }
 }
@@ -17,11 +17,20 @@
 package org.apache.camel;
 
 import org.apache.camel.impl.DefaultEndpoint;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import java.util.List;
 
 /**
- * Represents a CMIS endpoint.
+ * Represents a CMIS endpoint. When JMX is enabled, the endpoint is managed with the metrics of its
+ * requests to the repository.
  */
-public class CMISEndpoint extends DefaultEndpoint {
+@ManagedResource(description = "Managed CMIS Endpoint")
+// ManagementAware is deprecated, but it is the only way Camel 2.8 lets an endpoint expose its own MBean
+@SuppressWarnings("deprecation")
+public class CMISEndpoint extends DefaultEndpoint implements org.apache.camel.spi.ManagementAware<CMISEndpoint> {
 
     private CMISSessionFacade sessionFacade;
     private boolean queryMode;
@@ -56,4 +65,91 @@ public class CMISEndpoint extends DefaultEndpoint {
     public void setQueryMode(boolean queryMode) {
         this.queryMode = queryMode;
     }
+
+    public Object getManagedObject(CMISEndpoint endpoint) {
+        return this;
+    }
+
+    @ManagedAttribute(description = "Camel id")
+    public String getCamelId() {
+        return getCamelContext().getName();
+    }
+
+    @ManagedAttribute(description = "Endpoint uri")
+    public String getEndpointUri() {
+        return super.getEndpointUri();
+    }
+
+    @ManagedAttribute(description = "Pages of children, query results, descendants and changes fetched")
+    public long getPagesFetched() {
+        return sessionFacade.getMetrics().getPagesFetched();
+    }
+
+    @ManagedAttribute(description = "Nodes and query rows emitted")
+    public long getObjectsEmitted() {
+        return sessionFacade.getMetrics().getObjectsEmitted();
+    }
+
+    @ManagedAttribute(description = "Bytes of content read from the repository")
+    public long getContentBytesRead() {
+        return sessionFacade.getMetrics().getContentBytesRead();
+    }
+
+    @ManagedAttribute(description = "Bytes of content written to the repository")
+    public long getContentBytesWritten() {
+        return sessionFacade.getMetrics().getContentBytesWritten();
+    }
+
+    @ManagedAttribute(description = "Exchanges being processed")
+    public long getInflightExchanges() {
+        return sessionFacade.getMetrics().getInflightExchanges();
+    }
+
+    @ManagedAttribute(description = "Folder path cache hits")
+    public long getFolderCacheHits() {
+        FolderPathCache cache = sessionFacade.getFolderPathCache();
+        return cache != null ? cache.getHits() : 0;
+    }
+
+    @ManagedAttribute(description = "Folder path cache misses")
+    public long getFolderCacheMisses() {
+        FolderPathCache cache = sessionFacade.getFolderPathCache();
+        return cache != null ? cache.getMisses() : 0;
+    }
+
+    @ManagedAttribute(description = "Folder paths dropped from the cache because it was full, their entry expired or creating a node in them failed")
+    public long getFolderCacheEvictions() {
+        FolderPathCache cache = sessionFacade.getFolderPathCache();
+        return cache != null ? cache.getEvictions() : 0;
+    }
+
+    @ManagedAttribute(description = "Share of folder path lookups answered by the cache")
+    public double getFolderCacheHitRatio() {
+        long lookups = getFolderCacheHits() + getFolderCacheMisses();
+        return lookups > 0 ? (double) getFolderCacheHits() / lookups : 0;
+    }
+
+    @ManagedAttribute(description = "Number of calls and latencies of each repository operation")
+    public String[] getOperationStatistics() {
+        List<CMISMetrics.OperationStatistics> operations = sessionFacade.getMetrics().getOperationStatistics();
+        String[] result = new String[operations.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = operations.get(i).toString();
+        }
+        return result;
+    }
+
+    @ManagedOperation(description = "Latency in milliseconds below which the given percentile of the calls of an operation completed")
+    public double latencyPercentile(String operation, double percentile) {
+        return sessionFacade.getMetrics().getOperationStatistics(operation).getPercentileMillis(percentile);
+    }
+
+    @ManagedOperation(description = "Reset the metrics")
+    public void resetMetrics() {
+        sessionFacade.getMetrics().reset();
+    }
+
+    public CMISMetrics getMetrics() {
+        return sessionFacade.getMetrics();
+    }
 }
@@ -1,20 +1,36 @@
 package org.apache.camel;
 
+import org.apache.camel.util.CaseInsensitiveMap;
 import org.apache.chemistry.opencmis.client.api.*;
 import org.apache.chemistry.opencmis.client.api.Property;
 import org.apache.chemistry.opencmis.commons.PropertyIds;
 import org.apache.chemistry.opencmis.commons.data.PropertyData;
+import org.apache.chemistry.opencmis.commons.definitions.PropertyDefinition;
+import org.apache.chemistry.opencmis.commons.enums.BaseTypeId;
+import org.apache.chemistry.opencmis.commons.enums.Cardinality;
 
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public final class CMISHelper {
     private CMISHelper() {
     }
 
+    /**
+     * Headers the consumers add next to the properties of a node, such as its folder path or change type.
+     */
+    private static final int EXTRA_HEADERS = 2;
+
     public static Map<String, Object> filterCMISProperties(Map<String, Object> properties) {
-        Map<String, Object> result = new HashMap<String, Object>(properties.size());
+        // room for the object type id added when the headers have none
+        Map<String, Object> result = new HashMap<String, Object>(mapCapacity(properties.size() + 1));
         for (Map.Entry<String, Object> entry : properties.entrySet()) {
             if (entry.getKey().startsWith("cmis:")) {
                 result.put(entry.getKey(), entry.getValue());
@@ -24,24 +40,170 @@ public final class CMISHelper {
     }
 
     public static Map<String, Object> objectProperties(CmisObject cmisObject) {
+        return objectProperties(cmisObject, null);
+    }
+
+    public static Map<String, Object> objectProperties(CmisObject cmisObject, Set<String> projection) {
         List<Property<?>> propertyList = cmisObject.getProperties();
-        return propertyDataToMap(propertyList);
+        return propertyDataToMap(propertyList, projection);
     }
 
     public static Map<String, Object> propertyDataToMap(List<? extends PropertyData<?>> properties) {
-        Map<String, Object> result = new HashMap<String, Object>();
-        for (PropertyData propertyData : properties) {
-            result.put(propertyData.getId(), propertyData.getFirstValue());
+        return propertyDataToMap(properties, null);
+    }
+
+    /**
+     * Maps the properties into a plain map, such as a row of a query result, sized up front so it
+     * never grows.
+     *
+     * @param projection the ids of the properties to map, or <tt>null</tt> for all of them
+     */
+    public static Map<String, Object> propertyDataToMap(List<? extends PropertyData<?>> properties, Set<String> projection) {
+        Map<String, Object> result = new HashMap<String, Object>(mapCapacity(mappedSize(properties, projection)));
+        putFirstValues(properties, projection, result);
+        return result;
+    }
+
+    /**
+     * Maps the properties into a header map which {@link Message#setHeaders(Map)} takes as it is, with
+     * room for the headers the consumers add.
+     *
+     * @param projection the ids of the properties to map, or <tt>null</tt> for all of them
+     */
+    public static Map<String, Object> propertyDataToHeaders(List<? extends PropertyData<?>> properties, Set<String> projection) {
+        Map<String, Object> result = new CaseInsensitiveMap(mapCapacity(mappedSize(properties, projection) + EXTRA_HEADERS));
+        putFirstValues(properties, projection, result);
+        return result;
+    }
+
+    /**
+     * Maps every property to all its values: multi-valued properties to the List of their values and
+     * the others to their single value, converted by {@link #convertValue(Object)}. Whether a property
+     * is multi-valued only depends on its definition, never on the number of values it has. Lists which
+     * need no conversion are the ones of the properties, not copies.
+     *
+     * @param projection the ids of the properties to map, or <tt>null</tt> for all of them
+     * @param objectType the type defining the properties, for the ones which do not carry their definition
+     *                   such as the properties of query rows; properties without a definition are mapped
+     *                   to their first value
+     */
+    public static Map<String, Object> propertyDataToMultiValuedMap(List<? extends PropertyData<?>> properties, Set<String> projection,
+                                                                   ObjectType objectType) {
+        Map<String, Object> result = new HashMap<String, Object>(mapCapacity(mappedSize(properties, projection)));
+        putAllValues(properties, projection, objectType, result);
+        return result;
+    }
+
+    /**
+     * Maps every property to all its values like {@link #propertyDataToMultiValuedMap(List, Set, ObjectType)},
+     * into a header map like {@link #propertyDataToHeaders(List, Set)}.
+     */
+    public static Map<String, Object> propertyDataToMultiValuedHeaders(List<? extends PropertyData<?>> properties, Set<String> projection,
+                                                                       ObjectType objectType) {
+        Map<String, Object> result = new CaseInsensitiveMap(mapCapacity(mappedSize(properties, projection) + EXTRA_HEADERS));
+        putAllValues(properties, projection, objectType, result);
+        return result;
+    }
+
+    private static int mappedSize(List<? extends PropertyData<?>> properties, Set<String> projection) {
+        return projection != null ? Math.min(projection.size(), properties.size()) : properties.size();
+    }
+
+    private static void putFirstValues(List<? extends PropertyData<?>> properties, Set<String> projection, Map<String, Object> result) {
+        for (PropertyData<?> propertyData : properties) {
+            if (projection == null || projection.contains(propertyData.getId())) {
+                result.put(propertyData.getId(), propertyData.getFirstValue());
+            }
+        }
+    }
+
+    private static void putAllValues(List<? extends PropertyData<?>> properties, Set<String> projection, ObjectType objectType,
+                                     Map<String, Object> result) {
+        for (PropertyData<?> propertyData : properties) {
+            if (projection == null || projection.contains(propertyData.getId())) {
+                List<?> values = propertyData.getValues();
+                if (isMultiValued(propertyData, objectType)) {
+                    result.put(propertyData.getId(), convertValues(values));
+                } else {
+                    result.put(propertyData.getId(), values == null || values.isEmpty() ? null : convertValue(values.get(0)));
+                }
+            }
+        }
+    }
+
+    private static boolean isMultiValued(PropertyData<?> propertyData, ObjectType objectType) {
+        if (propertyData instanceof Property) {
+            return ((Property<?>) propertyData).isMultiValued();
+        }
+        if (objectType != null && objectType.getPropertyDefinitions() != null) {
+            PropertyDefinition<?> definition = objectType.getPropertyDefinitions().get(propertyData.getId());
+            if (definition != null) {
+                return definition.getCardinality() == Cardinality.MULTI;
+            }
+        }
+        return false;
+    }
+
+    private static List<?> convertValues(List<?> values) {
+        if (values == null || values.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // the values of a property all have the Java type of its property type
+        if (!isConverted(values.get(0))) {
+            return Collections.unmodifiableList(values);
+        }
+        List<Object> result = new ArrayList<Object>(values.size());
+        for (Object value : values) {
+            result.add(convertValue(value));
         }
         return result;
     }
 
+    /**
+     * @return dates as {@link Date}s, which drop the time zone, integers as {@link Long}s, and any
+     *         other value as it is
+     * @throws IllegalArgumentException if an integer does not fit in a {@link Long}, as mapping it to
+     *         another type would give the values of one property different types
+     */
+    public static Object convertValue(Object value) {
+        if (value instanceof GregorianCalendar) {
+            return ((GregorianCalendar) value).getTime();
+        }
+        if (value instanceof BigInteger) {
+            if (((BigInteger) value).bitLength() >= 64) {
+                throw new IllegalArgumentException("Integer " + value + " does not fit in a Long");
+            }
+            return ((BigInteger) value).longValue();
+        }
+        return value;
+    }
+
+    private static boolean isConverted(Object value) {
+        return value instanceof GregorianCalendar || value instanceof BigInteger;
+    }
+
+    /**
+     * @return the initial capacity of a hash map which holds that many entries without being resized
+     */
+    public static int mapCapacity(int size) {
+        // the smallest capacity whose 0.75 load factor threshold is at least size
+        return (size * 4 + 2) / 3;
+    }
+
     public static boolean isFolder(CmisObject cmisObject) {
-        return CamelCMISConstants.CMIS_FOLDER.equals(getObjectTypeId(cmisObject));
+        return BaseTypeId.CMIS_FOLDER == cmisObject.getBaseTypeId();
     }
 
     public static boolean isDocument(CmisObject cmisObject) {
-        return CamelCMISConstants.CMIS_DOCUMENT.equals(getObjectTypeId(cmisObject));
+        return BaseTypeId.CMIS_DOCUMENT == cmisObject.getBaseTypeId();
+    }
+
+    /**
+     * Assigns an object to one of <tt>shardCount</tt> shards by its id. String hash codes are the same
+     * in every JVM, so all the nodes of a cluster agree on it.
+     */
+    public static int shardOf(String objectId, int shardCount) {
+        return (objectId.hashCode() & Integer.MAX_VALUE) % shardCount;
     }
 
     public static Object getObjectTypeId(CmisObject child) {
@@ -0,0 +1,250 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread safe counters and latency histograms of the requests an endpoint sends to the
+ * repository and of the exchanges it creates. Latencies are kept in buckets of powers of two
+ * microseconds, so recording one is a couple of atomic increments and percentiles are
+ * accurate to a factor of two.
+ */
+public class CMISMetrics {
+    public static final String GET_CHILDREN = "getChildren";
+    public static final String GET_DESCENDANTS = "getDescendants";
+    public static final String GET_FOLDER_TREE = "getFolderTree";
+    public static final String QUERY = "query";
+    public static final String GET_CONTENT_CHANGES = "getContentChanges";
+    public static final String GET_OBJECT = "getObject";
+    public static final String GET_OBJECT_BY_PATH = "getObjectByPath";
+    public static final String GET_CONTENT_STREAM = "getContentStream";
+    public static final String CREATE_FOLDER = "createFolder";
+    public static final String CREATE_DOCUMENT = "createDocument";
+
+    private final ConcurrentMap<String, OperationStatistics> operations = new ConcurrentHashMap<String, OperationStatistics>();
+    private final AtomicLong pagesFetched = new AtomicLong();
+    private final AtomicLong objectsEmitted = new AtomicLong();
+    private final AtomicLong contentBytesRead = new AtomicLong();
+    private final AtomicLong contentBytesWritten = new AtomicLong();
+    private final AtomicLong inflightExchanges = new AtomicLong();
+
+    /**
+     * Records a request to the repository which started at the given {@link System#nanoTime()}.
+     */
+    public void record(String operation, long startNanos) {
+        getOperationStatistics(operation).record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records a page of a listing or query, which started at the given {@link System#nanoTime()}.
+     */
+    public void recordPage(String operation, long startNanos) {
+        record(operation, startNanos);
+        pagesFetched.incrementAndGet();
+    }
+
+    public void objectEmitted() {
+        objectsEmitted.incrementAndGet();
+    }
+
+    public void exchangeStarted() {
+        inflightExchanges.incrementAndGet();
+    }
+
+    public void exchangeDone() {
+        inflightExchanges.decrementAndGet();
+    }
+
+    /**
+     * @return the stream counting the bytes read from it as content read from the repository
+     */
+    public InputStream countRead(InputStream stream) {
+        return stream != null ? new CountingInputStream(stream, contentBytesRead) : null;
+    }
+
+    /**
+     * @return the stream counting the bytes the binding reads from it as content written to the repository
+     */
+    public InputStream countWritten(InputStream stream) {
+        return stream != null ? new CountingInputStream(stream, contentBytesWritten) : null;
+    }
+
+    public OperationStatistics getOperationStatistics(String operation) {
+        OperationStatistics statistics = operations.get(operation);
+        if (statistics == null) {
+            OperationStatistics created = new OperationStatistics(operation);
+            statistics = operations.putIfAbsent(operation, created);
+            if (statistics == null) {
+                statistics = created;
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * @return the statistics of every operation used so far
+     */
+    public List<OperationStatistics> getOperationStatistics() {
+        return new ArrayList<OperationStatistics>(operations.values());
+    }
+
+    public long getPagesFetched() {
+        return pagesFetched.get();
+    }
+
+    public long getObjectsEmitted() {
+        return objectsEmitted.get();
+    }
+
+    public long getContentBytesRead() {
+        return contentBytesRead.get();
+    }
+
+    public long getContentBytesWritten() {
+        return contentBytesWritten.get();
+    }
+
+    public long getInflightExchanges() {
+        return inflightExchanges.get();
+    }
+
+    /**
+     * Clears the counters and histograms; the in-flight exchanges are a gauge and are kept.
+     */
+    public void reset() {
+        operations.clear();
+        pagesFetched.set(0);
+        objectsEmitted.set(0);
+        contentBytesRead.set(0);
+        contentBytesWritten.set(0);
+    }
+
+    /**
+     * Number of calls and latency histogram of one operation.
+     */
+    public static final class OperationStatistics {
+        private static final int BUCKETS = 40;
+
+        private final String operation;
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        OperationStatistics(String operation) {
+            this.operation = operation;
+        }
+
+        void record(long nanos) {
+            long micros = Math.max(nanos / 1000, 0);
+            // bucket i holds the latencies below 2^i microseconds
+            buckets.incrementAndGet(Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1));
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+                max = maxNanos.get();
+            }
+        }
+
+        public String getOperation() {
+            return operation;
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public double getMeanMillis() {
+            long calls = count.get();
+            return calls > 0 ? totalNanos.get() / 1e6 / calls : 0;
+        }
+
+        public double getMaxMillis() {
+            return maxNanos.get() / 1e6;
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         * @return the upper bound of the bucket holding the given percentile of the latencies
+         */
+        public double getPercentileMillis(double percentile) {
+            long calls = count.get();
+            if (calls == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(calls * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return Math.min((1L << i) / 1e3, getMaxMillis());
+                }
+            }
+            return getMaxMillis();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s count=%d mean=%.3fms p50=%.3fms p99=%.3fms max=%.3fms", operation, getCount(),
+                    getMeanMillis(), getPercentileMillis(50), getPercentileMillis(99), getMaxMillis());
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private final AtomicLong counter;
+
+        private CountingInputStream(InputStream in, AtomicLong counter) {
+            super(in);
+            this.counter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                counter.incrementAndGet();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                counter.addAndGet(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            counter.addAndGet(skipped);
+            return skipped;
+        }
+    }
+}
@@ -16,20 +16,31 @@
  */
 package org.apache.camel;
 
+import org.apache.camel.component.file.GenericFile;
+import org.apache.camel.impl.DefaultExchange;
 import org.apache.camel.impl.DefaultProducer;
 import org.apache.camel.util.ExchangeHelper;
+import org.apache.camel.util.IOHelper;
 import org.apache.camel.util.MessageHelper;
-import org.apache.chemistry.opencmis.client.api.CmisObject;
-import org.apache.chemistry.opencmis.client.api.Document;
-import org.apache.chemistry.opencmis.client.api.Folder;
 import org.apache.chemistry.opencmis.commons.PropertyIds;
 import org.apache.chemistry.opencmis.commons.data.ContentStream;
+import org.apache.chemistry.opencmis.commons.enums.BaseTypeId;
 import org.apache.chemistry.opencmis.commons.enums.VersioningState;
 import org.apache.chemistry.opencmis.commons.exceptions.CmisObjectNotFoundException;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * The CMIS producer.
@@ -37,6 +48,7 @@ import java.util.Map;
 public class CMISProducer extends DefaultProducer {
     private static final transient Log LOG = LogFactory.getLog(CMISProducer.class);
     private final CMISSessionFacade cmisSessionFacade;
+    private ExecutorService batchExecutorService;
 
     public CMISProducer(CMISEndpoint endpoint, CMISSessionFacade cmisSessionFacade) {
         super(endpoint);
@@ -44,34 +56,144 @@ public class CMISProducer extends DefaultProducer {
     }
 
     public void process(Exchange exchange) throws Exception {
-        CmisObject cmisObject = createNode(exchange);
-        exchange.getOut().setBody(cmisObject.getId());
+        CMISMetrics metrics = cmisSessionFacade.getMetrics();
+        metrics.exchangeStarted();
+        try {
+            if (cmisSessionFacade.isBatch() && exchange.getIn().getBody() instanceof List) {
+                processBatch(exchange, (List<?>) exchange.getIn().getBody());
+                return;
+            }
+            String newNodeId = createNodeWithOneSession(exchange);
+            exchange.getOut().setBody(newNodeId);
+        } finally {
+            metrics.exchangeDone();
+        }
+    }
+
+    /**
+     * Creates one node for each item of the list concurrently. The ids of the new nodes are returned
+     * in the order of the items, with <tt>null</tt> for the items which failed; their exceptions are
+     * in the CamelCMISBatchErrors header, keyed by the index of the item.
+     */
+    private void processBatch(Exchange exchange, List<?> items) throws Exception {
+        List<Future<String>> futures = new ArrayList<Future<String>>(items.size());
+        List<String> newNodeIds = new ArrayList<String>(items.size());
+        Map<Integer, Exception> errors = new LinkedHashMap<Integer, Exception>();
+        try {
+            for (Object item : items) {
+                final Exchange itemExchange = createItemExchange(exchange, item);
+                futures.add(batchExecutorService.submit(new Callable<String>() {
+                    public String call() throws Exception {
+                        return createNodeWithOneSession(itemExchange);
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    newNodeIds.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    newNodeIds.add(null);
+                    errors.put(i, e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+                }
+            }
+        } finally {
+            // when interrupted or given an unsupported item, the nodes not created yet are abandoned
+            for (int i = newNodeIds.size(); i < futures.size(); i++) {
+                futures.get(i).cancel(true);
+            }
+        }
+        LOG.debug("Created " + (items.size() - errors.size()) + " of " + items.size() + " nodes in batch");
+
+        exchange.getOut().setBody(newNodeIds);
+        exchange.getOut().setHeader(CamelCMISConstants.CAMEL_CMIS_RESULT_COUNT, items.size() - errors.size());
+        if (!errors.isEmpty()) {
+            exchange.getOut().setHeader(CamelCMISConstants.CAMEL_CMIS_BATCH_ERRORS, errors);
+        }
+    }
+
+    /**
+     * A batch item is either an exchange or message to store, or a map of headers holding the
+     * content, if any, under CamelCMISContent.
+     */
+    private Exchange createItemExchange(Exchange exchange, Object item) {
+        if (item instanceof Exchange) {
+            return (Exchange) item;
+        }
+        Exchange itemExchange = new DefaultExchange(exchange.getContext());
+        if (item instanceof Message) {
+            itemExchange.setIn((Message) item);
+        } else if (item instanceof Map) {
+            Map<?, ?> itemHeaders = (Map<?, ?>) item;
+            Map<String, Object> headers = new HashMap<String, Object>(CMISHelper.mapCapacity(itemHeaders.size()));
+            for (Map.Entry<?, ?> entry : itemHeaders.entrySet()) {
+                headers.put(String.valueOf(entry.getKey()), entry.getValue());
+            }
+            itemExchange.getIn().setBody(headers.remove(CamelCMISConstants.CAMEL_CMIS_CONTENT_STREAM));
+            itemExchange.getIn().setHeaders(headers);
+        } else {
+            throw new IllegalArgumentException("Unsupported batch item " + item);
+        }
+        return itemExchange;
     }
 
-    private CmisObject createNode(Exchange exchange) throws Exception {
+    @Override
+    protected void doStart() throws Exception {
+        super.doStart();
+        if (cmisSessionFacade.isBatch()) {
+            batchExecutorService = getEndpoint().getCamelContext().getExecutorServiceStrategy()
+                    .newFixedThreadPool(this, "CMISBatchProducer", cmisSessionFacade.getBatchThreads());
+        }
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        if (batchExecutorService != null) {
+            getEndpoint().getCamelContext().getExecutorServiceStrategy().shutdownNow(batchExecutorService);
+            batchExecutorService = null;
+        }
+        super.doStop();
+    }
+
+    private String createNodeWithOneSession(Exchange exchange) throws Exception {
+        boolean pinned = cmisSessionFacade.pinSession();
+        try {
+            return createNode(exchange);
+        } finally {
+            if (pinned) {
+                cmisSessionFacade.releaseSession();
+            }
+        }
+    }
+
+    private String createNode(Exchange exchange) throws Exception {
         validateRequiredHeader(exchange, PropertyIds.NAME);
 
         Message message = exchange.getIn();
         String parentFolderPath = parentFolderPathFor(message);
-        Folder parentFolder = getFolderOnPath(exchange, parentFolderPath);
+        String parentFolderId = getFolderIdOnPath(exchange, parentFolderPath);
         Map<String, Object> cmisProperties = CMISHelper.filterCMISProperties(message.getHeaders());
 
         if (isDocument(exchange)) {
             String fileName = message.getHeader(PropertyIds.NAME, String.class);
             String mimeType = getMimeType(message);
-            byte[] buf = getBodyData(message);
-            ContentStream contentStream = cmisSessionFacade.createContentStream(fileName, buf, mimeType);
-            return storeDocument(parentFolder, cmisProperties, contentStream, cmisSessionFacade);
+            ContentStream contentStream = createContentStream(message, fileName, mimeType);
+            try {
+                return storeDocument(parentFolderPath, parentFolderId, cmisProperties, contentStream);
+            } finally {
+                if (contentStream != null) {
+                    IOHelper.close(contentStream.getStream());
+                }
+            }
         } else if (isFolder(message)) {
-            return storeFolder(parentFolder, cmisProperties);
+            return storeFolder(parentFolderPath, parentFolderId, cmisProperties);
         } else {  //other types
-            return storeDocument(parentFolder, cmisProperties, null, cmisSessionFacade);
+            return storeDocument(parentFolderPath, parentFolderId, cmisProperties, null);
         }
     }
 
-    private Folder getFolderOnPath(Exchange exchange, String path) {
+    private String getFolderIdOnPath(Exchange exchange, String path) {
         try {
-            return (Folder) cmisSessionFacade.getObjectByPath(path);
+            return cmisSessionFacade.getFolderIdByPath(path);
         } catch (CmisObjectNotFoundException e) {
             throw new RuntimeExchangeException("Path not found " + path, exchange, e);
         }
@@ -95,22 +217,22 @@ public class CMISProducer extends DefaultProducer {
     }
 
     private boolean isFolder(Message message) {
-        String baseTypeId = message.getHeader(PropertyIds.OBJECT_TYPE_ID, String.class);
-        if (baseTypeId != null) {
-            return baseTypeId.equals(CamelCMISConstants.CMIS_FOLDER);
+        String objectTypeId = message.getHeader(PropertyIds.OBJECT_TYPE_ID, String.class);
+        if (objectTypeId != null) {
+            return cmisSessionFacade.getBaseTypeId(objectTypeId) == BaseTypeId.CMIS_FOLDER;
         }
         return message.getBody() == null;
     }
 
-    private Folder storeFolder(Folder parentFolder, Map<String, Object> cmisProperties) {
+    private String storeFolder(String parentFolderPath, String parentFolderId, Map<String, Object> cmisProperties) {
         if (!cmisProperties.containsKey(PropertyIds.OBJECT_TYPE_ID)) {
             cmisProperties.put(PropertyIds.OBJECT_TYPE_ID, CamelCMISConstants.CMIS_FOLDER);
         }
         LOG.debug("Creating folder with properties: " + cmisProperties);
-        return parentFolder.createFolder(cmisProperties);
+        return cmisSessionFacade.createFolder(parentFolderPath, parentFolderId, cmisProperties);
     }
 
-    private Document storeDocument(Folder parentFolder, Map<String, Object> cmisProperties, ContentStream contentStream, CMISSessionFacade cmisSessionFacade) {
+    private String storeDocument(String parentFolderPath, String parentFolderId, Map<String, Object> cmisProperties, ContentStream contentStream) {
         if (!cmisProperties.containsKey(PropertyIds.OBJECT_TYPE_ID)) {
             cmisProperties.put(PropertyIds.OBJECT_TYPE_ID, CamelCMISConstants.CMIS_DOCUMENT);
         }
@@ -120,7 +242,7 @@ public class CMISProducer extends DefaultProducer {
              versioningState = VersioningState.MAJOR;
         }
         LOG.debug("Creating document with properties: " + cmisProperties);
-        return parentFolder.createDocument(cmisProperties, contentStream, versioningState);
+        return cmisSessionFacade.createDocument(parentFolderPath, parentFolderId, cmisProperties, contentStream, versioningState);
     }
 
     private void validateRequiredHeader(Exchange exchange, String name) throws NoSuchHeaderException {
@@ -128,15 +250,37 @@ public class CMISProducer extends DefaultProducer {
     }
 
     private boolean isDocument(Exchange exchange) {
-        String baseTypeId = exchange.getIn().getHeader(PropertyIds.OBJECT_TYPE_ID, String.class);
-        if (baseTypeId != null) {
-            return baseTypeId.equals(CamelCMISConstants.CMIS_DOCUMENT);
+        String objectTypeId = exchange.getIn().getHeader(PropertyIds.OBJECT_TYPE_ID, String.class);
+        if (objectTypeId != null) {
+            return cmisSessionFacade.getBaseTypeId(objectTypeId) == BaseTypeId.CMIS_DOCUMENT;
         }
         return exchange.getIn().getBody() != null;
     }
 
-    private byte[] getBodyData(Message message) {
-        return message.getBody(new byte[0].getClass());
+    /**
+     * Passes file and stream bodies to the repository without reading them into memory. The length
+     * is taken from the file, or from the Content-Length header for streams; when it is unknown
+     * the binding streams the content without announcing its size.
+     */
+    private ContentStream createContentStream(Message message, String fileName, String mimeType) throws Exception {
+        Object body = message.getBody();
+        if (body == null) {
+            return null;
+        }
+        if (body instanceof byte[] || body instanceof String) {
+            return cmisSessionFacade.createContentStream(fileName, message.getBody(byte[].class), mimeType);
+        }
+
+        long length;
+        if (body instanceof File) {
+            length = ((File) body).length();
+        } else if (body instanceof GenericFile) {
+            length = ((GenericFile<?>) body).getFileLength();
+        } else {
+            length = message.getHeader(Exchange.CONTENT_LENGTH, -1L, Long.class);
+        }
+        InputStream stream = message.getMandatoryBody(InputStream.class);
+        return cmisSessionFacade.createContentStream(fileName, stream, length, mimeType);
     }
 
     private String getMimeType(Message message) throws NoSuchHeaderException {
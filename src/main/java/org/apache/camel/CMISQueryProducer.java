@@ -17,18 +17,21 @@
 package org.apache.camel;
 
 import org.apache.camel.impl.DefaultProducer;
+import org.apache.camel.impl.SynchronizationAdapter;
 import org.apache.camel.util.ExchangeHelper;
 import org.apache.chemistry.opencmis.client.api.ItemIterable;
 import org.apache.chemistry.opencmis.client.api.QueryResult;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 /**
  * The CMIS Query producer.
  */
 public class CMISQueryProducer extends DefaultProducer {
     private final CMISSessionFacade cmisSessionFacade;
+    private ExecutorService prefetchExecutorService;
 
     public CMISQueryProducer(CMISEndpoint endpoint, CMISSessionFacade cmisSessionFacade) {
         super(endpoint);
@@ -36,17 +39,68 @@ public class CMISQueryProducer extends DefaultProducer {
     }
 
     public void process(Exchange exchange) throws Exception {
-        List<Map<String, Object>> nodes = executeQuery(exchange);
-        exchange.getOut().setBody(nodes);
-        exchange.getOut().setHeader(CamelCMISConstants.CAMEL_CMIS_RESULT_COUNT, nodes.size());
+        // the query and the content of its rows are read with one session, which streamed rows keep
+        boolean pinned = cmisSessionFacade.pinSession();
+        try {
+            executeQuery(exchange);
+        } finally {
+            if (pinned) {
+                cmisSessionFacade.releaseSession();
+            }
+        }
     }
 
-    private List<Map<String, Object>> executeQuery(Exchange exchange) throws Exception {
+    private void executeQuery(Exchange exchange) throws Exception {
         String query = ExchangeHelper.getMandatoryInBody(exchange, String.class);
         boolean retrieveContent = exchange.getIn().getHeader(CamelCMISConstants.CAMEL_CMIS_RETRIEVE_CONTENT, false, Boolean.class);
         int readSize = exchange.getIn().getHeader(CamelCMISConstants.CAMEL_CMIS_READ_SIZE, 0, Integer.class);
-
+        // a route can read a large document in chunks by moving the range from one exchange to the next
+        long contentOffset = exchange.getIn().getHeader(CamelCMISConstants.CAMEL_CMIS_CONTENT_OFFSET,
+                cmisSessionFacade.getContentOffset(), Long.class);
+        long contentLength = exchange.getIn().getHeader(CamelCMISConstants.CAMEL_CMIS_CONTENT_LENGTH,
+                cmisSessionFacade.getContentLength(), Long.class);
         ItemIterable<QueryResult> itemIterable = cmisSessionFacade.executeQuery(query);
-        return cmisSessionFacade.retrieveResult(retrieveContent, readSize, itemIterable);
+
+        CMISMetrics metrics = cmisSessionFacade.getMetrics();
+        metrics.exchangeStarted();
+        try {
+            final QueryResultIterator rows = cmisSessionFacade.iterateResult(retrieveContent, readSize, itemIterable, prefetchExecutorService);
+            rows.setContentRange(contentOffset, contentLength);
+            if (cmisSessionFacade.isStreamResults()) {
+                // the size is unknown until the caller has gone through all the pages
+                exchange.addOnCompletion(new SynchronizationAdapter() {
+                    @Override
+                    public void onDone(Exchange exchange) {
+                        // the route may stop reading before the end
+                        rows.close();
+                    }
+                });
+                exchange.getOut().setBody(rows);
+            } else {
+                List<Map<String, Object>> nodes = cmisSessionFacade.retrieveResult(rows);
+                exchange.getOut().setBody(nodes);
+                exchange.getOut().setHeader(CamelCMISConstants.CAMEL_CMIS_RESULT_COUNT, nodes.size());
+            }
+        } finally {
+            metrics.exchangeDone();
+        }
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        super.doStart();
+        if (cmisSessionFacade.getPrefetchDepth() > 0) {
+            prefetchExecutorService = getEndpoint().getCamelContext().getExecutorServiceStrategy()
+                    .newFixedThreadPool(this, "CMISPagePrefetch", cmisSessionFacade.getPrefetchDepth());
+        }
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        if (prefetchExecutorService != null) {
+            getEndpoint().getCamelContext().getExecutorServiceStrategy().shutdownNow(prefetchExecutorService);
+            prefetchExecutorService = null;
+        }
+        super.doStop();
     }
 }
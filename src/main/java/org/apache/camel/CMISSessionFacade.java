@@ -1,5 +1,6 @@
 package org.apache.camel;
 
+import org.apache.camel.util.CaseInsensitiveMap;
 import org.apache.chemistry.opencmis.client.api.*;
 import org.apache.chemistry.opencmis.client.runtime.ObjectIdImpl;
 import org.apache.chemistry.opencmis.client.runtime.OperationContextImpl;
@@ -7,28 +8,102 @@ import org.apache.chemistry.opencmis.client.runtime.SessionFactoryImpl;
 import org.apache.chemistry.opencmis.commons.PropertyIds;
 import org.apache.chemistry.opencmis.commons.SessionParameter;
 import org.apache.chemistry.opencmis.commons.data.ContentStream;
+import org.apache.chemistry.opencmis.commons.data.PropertyData;
+import org.apache.chemistry.opencmis.commons.enums.BaseTypeId;
 import org.apache.chemistry.opencmis.commons.enums.BindingType;
+import org.apache.chemistry.opencmis.commons.enums.CapabilityChanges;
+import org.apache.chemistry.opencmis.commons.enums.ChangeType;
+import org.apache.chemistry.opencmis.commons.enums.IncludeRelationships;
+import org.apache.chemistry.opencmis.commons.enums.VersioningState;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisBaseException;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisConnectionException;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisConstraintException;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisInvalidArgumentException;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisNotSupportedException;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisObjectNotFoundException;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 public class CMISSessionFacade {
     private static final transient Log LOG = LogFactory.getLog(CMISSessionFacade.class);
     private final String url;
+    private String endpointUri;
+    private String bindingType = BindingType.ATOMPUB.value();
+    private String localFactory;
     private int pageSize = 100;
+    private int prefetchDepth;
     private int readCount;
     private boolean readContent;
+    private boolean cacheContent;
+    private long spoolThreshold = 128 * 1024;
+    private String spoolDirectory;
+    private ContentSpool contentSpool;
+    private long contentOffset;
+    private long contentLength = -1;
     private String username;
     private String password;
     private String repositoryId;
     private String query;
-    private Session session;
+    private boolean watermark;
+    private volatile boolean watermarkOrderedByObjectId = true;
+    private int shardCount = 1;
+    private int shardIndex;
+    private int shardThreads = 1;
+    private String filter;
+    private Set<String> projection;
+    private boolean multiValued;
+    private boolean includeAllowableActions = true;
+    private boolean includeAcls;
+    private boolean includePolicies;
+    private String includeRelationships = IncludeRelationships.NONE.value();
+    private String renditionFilter = OperationContextImpl.RENDITION_NONE;
+    private OperationContext operationContext;
+    private boolean streamResults;
+    private int walkerThreads = 1;
+    private boolean walkerOrdered = true;
+    private String traversal;
+    private int descendantsDepth;
+    private int maxBufferedPages = 16;
+    private boolean changeLog;
+    private String checkpointFile;
+    private CheckpointStore checkpointStore;
+    private boolean skipUnchanged;
+    private boolean pruneUnchangedFolders;
+    private String indexFile;
+    private int indexRetainPolls;
+    private ObjectVersionIndex versionIndex;
+    private ObjectVersionIndex folderIndex;
+    private boolean batch;
+    private int batchThreads = 10;
+    private int maxInflightExchanges;
+    private int folderCacheSize;
+    private long folderCacheTtl = 60000;
+    private FolderPathCache folderPathCache;
+    private String cachedTypes;
+    private long typeCacheRefresh;
+    private TypeDefinitionCache typeDefinitionCache;
+    private CMISSessionRegistry sessionRegistry = new CMISSessionRegistry();
+    private final ThreadLocal<Session> pinnedSession = new ThreadLocal<Session>();
+    private Map<String, String> sessionParameters;
+    private boolean lazyStartup;
+    private int connectRetries;
+    private long connectRetryDelay = 1000;
+    private volatile boolean connected;
+    private final CMISMetrics metrics = new CMISMetrics();
 
     public CMISSessionFacade(String url) {
         this.url = url;
@@ -36,126 +111,737 @@ public class CMISSessionFacade {
 
     void initSession() {
         Map<String, String> parameter = new HashMap<String, String>();
-        parameter.put(SessionParameter.BINDING_TYPE, BindingType.ATOMPUB.value());
-        parameter.put(SessionParameter.ATOMPUB_URL, this.url);
+        BindingType binding = BindingType.fromValue(bindingType);
+        parameter.put(SessionParameter.BINDING_TYPE, binding.value());
+        if (binding == BindingType.ATOMPUB) {
+            parameter.put(SessionParameter.ATOMPUB_URL, this.url);
+        } else if (binding == BindingType.WEBSERVICES) {
+            putWebServicesUrls(parameter);
+        } else if (binding == BindingType.LOCAL) {
+            if (localFactory == null) {
+                throw new IllegalArgumentException("The local binding needs the class name of a CmisServiceFactory in localFactory");
+            }
+            parameter.put(SessionParameter.LOCAL_FACTORY, this.localFactory);
+        }
         parameter.put(SessionParameter.USER, this.username);
         parameter.put(SessionParameter.PASSWORD, this.password);
         if (this.repositoryId != null) {
             parameter.put(SessionParameter.REPOSITORY_ID, this.repositoryId);
-            this.session = SessionFactoryImpl.newInstance().createSession(parameter);
-        } else {
-            this.session = SessionFactoryImpl.newInstance().getRepositories(parameter).get(0).createSession();
+        }
+        this.sessionParameters = parameter;
+        if (shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount) {
+            throw new IllegalArgumentException("Shard index must be between 0 and " + (shardCount - 1) + ", was " + shardIndex);
+        }
+        if (traversal != null) {
+            IterativeTreeWalker.validateTraversal(traversal);
+            if (walkerThreads > 1) {
+                throw new IllegalArgumentException("traversal walks the tree from the polling thread, it cannot be combined with walkerThreads");
+            }
+        }
+        if (descendantsDepth != 0) {
+            DescendantsTreeWalker.validateDepth(descendantsDepth);
+        }
+        if (watermark && query != null) {
+            // rejects queries with an ORDER BY clause of their own
+            QueryWatermark.fromCheckpoint(null).applyTo(query);
+        }
+        this.operationContext = createOperationContext();
+
+        if (folderCacheSize > 0) {
+            this.folderPathCache = new FolderPathCache(folderCacheSize, folderCacheTtl);
+        }
+        if (cacheContent) {
+            this.contentSpool = new ContentSpool(spoolThreshold, spoolDirectory != null ? new File(spoolDirectory) : null);
+        }
+        this.typeDefinitionCache = new TypeDefinitionCache(typeCacheRefresh);
+        if (!lazyStartup) {
+            connect();
         }
     }
 
-    public int poll(CMISConsumer cmisConsumer) throws Exception {
-        if (query != null) {
-            return pollWithQuery(cmisConsumer);
+    /**
+     * The url of a web services endpoint is the base the WSDL of each CMIS service is found under,
+     * such as http://host/opencmis/services for http://host/opencmis/services/RepositoryService?wsdl.
+     */
+    private void putWebServicesUrls(Map<String, String> parameter) {
+        String base = url.endsWith("/") ? url : url + "/";
+        parameter.put(SessionParameter.WEBSERVICES_REPOSITORY_SERVICE, base + "RepositoryService?wsdl");
+        parameter.put(SessionParameter.WEBSERVICES_NAVIGATION_SERVICE, base + "NavigationService?wsdl");
+        parameter.put(SessionParameter.WEBSERVICES_OBJECT_SERVICE, base + "ObjectService?wsdl");
+        parameter.put(SessionParameter.WEBSERVICES_VERSIONING_SERVICE, base + "VersioningService?wsdl");
+        parameter.put(SessionParameter.WEBSERVICES_DISCOVERY_SERVICE, base + "DiscoveryService?wsdl");
+        parameter.put(SessionParameter.WEBSERVICES_RELATIONSHIP_SERVICE, base + "RelationshipService?wsdl");
+        parameter.put(SessionParameter.WEBSERVICES_MULTIFILING_SERVICE, base + "MultiFilingService?wsdl");
+        parameter.put(SessionParameter.WEBSERVICES_POLICY_SERVICE, base + "PolicyService?wsdl");
+        parameter.put(SessionParameter.WEBSERVICES_ACL_SERVICE, base + "ACLService?wsdl");
+    }
+
+    /**
+     * Builds the context all the listings, queries and lookups of this endpoint share, so the
+     * repository only returns what the endpoint was configured to use.
+     */
+    private OperationContext createOperationContext() {
+        OperationContextImpl context = new OperationContextImpl();
+        if (filter != null && !OperationContextImpl.PROPERTIES_STAR.equals(filter.trim())) {
+            // without its path a folder is fetched again by Folder.getPath()
+            String filterString = filter + "," + PropertyIds.PATH;
+            if (isVersionIndexUsed()) {
+                filterString += "," + PropertyIds.CHANGE_TOKEN + "," + PropertyIds.LAST_MODIFICATION_DATE;
+            }
+            context.setFilterString(filterString);
         }
-        return pollTree(cmisConsumer);
+        context.setIncludeAllowableActions(includeAllowableActions);
+        context.setIncludeAcls(includeAcls);
+        context.setIncludePolicies(includePolicies);
+        context.setIncludeRelationships(IncludeRelationships.fromValue(includeRelationships));
+        context.setRenditionFilterString(renditionFilter);
+        context.setMaxItemsPerPage(pageSize);
+        return context;
     }
 
-    private int pollTree(CMISConsumer cmisConsumer) throws Exception {
-        Folder rootFolder = session.getRootFolder();
-        RecursiveTreeWalker treeWalker = new RecursiveTreeWalker(cmisConsumer, readContent, readCount, pageSize);
-        return treeWalker.processFolderRecursively(rootFolder);
+    /**
+     * Opens the session and loads the type definitions, retrying with an exponential backoff
+     * while the repository cannot be reached. Any other failure, such as wrong credentials or an
+     * unknown repository, is thrown right away.
+     */
+    private synchronized void connect() {
+        if (connected) {
+            return;
+        }
+        long delay = connectRetryDelay;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                Session session = sessionRegistry.getSession(sessionParameters);
+                typeDefinitionCache.warmUp(session, CamelCMISConstants.CMIS_DOCUMENT, CamelCMISConstants.CMIS_FOLDER);
+                if (cachedTypes != null) {
+                    typeDefinitionCache.warmUp(session, cachedTypes.split(","));
+                }
+                connected = true;
+                return;
+            } catch (CmisConnectionException e) {
+                if (attempt >= connectRetries) {
+                    throw e;
+                }
+                LOG.warn("Cannot connect to " + url + ", retrying in " + delay + " ms: " + e.getMessage());
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeCamelException("Interrupted while connecting to " + url, ie);
+                }
+                delay *= 2;
+            }
+        }
     }
 
-    private int pollWithQuery(CMISConsumer cmisConsumer) throws Exception {
+    Session getSession() {
+        Session session = pinnedSession.get();
+        if (session != null) {
+            return session;
+        }
+        if (!connected) {
+            connect();
+        }
+        return sessionRegistry.getSession(sessionParameters);
+    }
+
+    /**
+     * Takes one session of the pool for all the requests the current thread makes until
+     * {@link #releaseSession()}, so the requests of a poll or of an exchange use the same session.
+     *
+     * @return <tt>false</tt> if the thread already holds a session, which it keeps
+     */
+    boolean pinSession() {
+        return pinnedSession.get() == null && pinSession(getSession());
+    }
+
+    /**
+     * Pins the given session, such as the one a query ran with, to the current thread.
+     *
+     * @return <tt>false</tt> if the thread already holds a session, which it keeps
+     */
+    boolean pinSession(Session session) {
+        if (pinnedSession.get() != null) {
+            return false;
+        }
+        pinnedSession.set(session);
+        return true;
+    }
+
+    void releaseSession() {
+        pinnedSession.remove();
+    }
+
+    Map<String, String> getSessionParameters() {
+        return sessionParameters;
+    }
+
+    void setSessionRegistry(CMISSessionRegistry sessionRegistry) {
+        this.sessionRegistry = sessionRegistry;
+    }
+
+    void setEndpointUri(String endpointUri) {
+        this.endpointUri = endpointUri;
+    }
+
+    public int poll(CMISConsumer cmisConsumer) throws Exception {
+        boolean pinned = pinSession();
+        try {
+            if (changeLog) {
+                return pollChangeLog(cmisConsumer);
+            }
+            if (query != null) {
+                return watermark ? pollWithWatermark(cmisConsumer) : pollWithQuery(cmisConsumer);
+            }
+            return pollTree(cmisConsumer);
+        } finally {
+            if (pinned) {
+                releaseSession();
+            }
+        }
+    }
+
+    private int pollChangeLog(CMISConsumer cmisConsumer) throws Exception {
+        Session session = getSession();
+        CapabilityChanges changesCapability = session.getRepositoryInfo().getCapabilities().getChangesCapability();
+        if (changesCapability == null || changesCapability == CapabilityChanges.NONE) {
+            throw new RuntimeCamelException("Repository " + session.getRepositoryInfo().getId() + " does not support content changes");
+        }
+
+        OperationContext changeContext = new OperationContextImpl(operationContext);
+        changeContext.setCacheEnabled(false);
+
+        CheckpointStore store = getCheckpointStore();
+        String changeLogToken = store.load();
         int count = 0;
         int pageNumber = 0;
         boolean finished = false;
-        ItemIterable<QueryResult> itemIterable = executeQuery(query);
         while (!finished) {
-            ItemIterable<QueryResult> currentPage = itemIterable.skipTo(count).getPage();
-            LOG.debug("Processing page " + pageNumber);
-            for (QueryResult item : currentPage) {
-                Map<String, Object> properties = CMISHelper.propertyDataToMap(item.getProperties());
-                Object objectTypeId = item.getPropertyValueById(PropertyIds.OBJECT_TYPE_ID);
-                InputStream inputStream = null;
-                if (readContent && CamelCMISConstants.CMIS_DOCUMENT.equals(objectTypeId)) {
-                    inputStream = getContentStreamFor(item);
-                }
-
-                cmisConsumer.sendExchangeWithPropsAndBody(properties, inputStream);
-                count++;
-                if (count == readCount) {
-                    finished = true;
-                    break;
+            // the event of the token we resume from is returned again as the first one
+            boolean skipFirst = changeLogToken != null;
+            int maxItems = readCount > 0 ? Math.min(pageSize, readCount - count) : pageSize;
+            long started = System.nanoTime();
+            ChangeEvents changeEvents = session.getContentChanges(changeLogToken, false, skipFirst ? maxItems + 1 : maxItems);
+            metrics.recordPage(CMISMetrics.GET_CONTENT_CHANGES, started);
+            LOG.debug("Processing change log page " + pageNumber);
+            int processed = 0;
+            for (ChangeEvent changeEvent : changeEvents.getChangeEvents()) {
+                if (skipFirst) {
+                    skipFirst = false;
+                    continue;
                 }
+                sendChangeEvent(cmisConsumer, session, changeEvent, changeContext);
+                processed++;
             }
+            count += processed;
             pageNumber++;
-            if (!currentPage.getHasMoreItems()) {
+
+            // the token only moves past events the route is done with
+            if (!cmisConsumer.awaitExchanges()) {
+                LOG.warn("Change log events failed, the next poll resumes from change log token " + changeLogToken);
+                break;
+            }
+            String latestToken = changeEvents.getLatestChangeLogToken();
+            if (processed > 0 && (latestToken == null || latestToken.equals(changeLogToken))) {
+                // fetching the next page with the same token would return the same events again
+                throw new RuntimeCamelException("Repository " + session.getRepositoryInfo().getId()
+                        + " returned change events without a new change log token, its binding cannot resume"
+                        + " the change log and every poll would deliver the events from " + changeLogToken + " again");
+            }
+            if (latestToken != null) {
+                changeLogToken = latestToken;
+                store.save(changeLogToken);
+            }
+            if (processed == 0 || !changeEvents.getHasMoreItems() || count == readCount) {
                 finished = true;
             }
         }
         return count;
     }
 
-    //some duplication
-    public List<Map<String, Object>> retrieveResult(boolean retrieveContent, int readSize, ItemIterable<QueryResult> itemIterable) {
-        List<Map<String, Object>> result = new ArrayList<Map<String, Object>>();
+    private void sendChangeEvent(CMISConsumer cmisConsumer, Session session, ChangeEvent changeEvent, OperationContext operationContext) throws Exception {
+        Map<String, Object> properties = null;
+        InputStream inputStream = null;
+        if (changeEvent.getChangeType() != ChangeType.DELETED) {
+            try {
+                long started = System.nanoTime();
+                CmisObject cmisObject = session.getObject(changeEvent.getObjectId(), operationContext);
+                metrics.record(CMISMetrics.GET_OBJECT, started);
+                properties = propertiesOf(cmisObject);
+                if (readContent && CMISHelper.isDocument(cmisObject)) {
+                    inputStream = getContentStream((Document) cmisObject);
+                }
+            } catch (CmisObjectNotFoundException e) {
+                LOG.debug("Object " + changeEvent.getObjectId() + " was removed after the change was recorded");
+            }
+        }
+        if (properties == null) {
+            properties = new CaseInsensitiveMap();
+            properties.put(PropertyIds.OBJECT_ID, changeEvent.getObjectId());
+        }
+        properties.put(CamelCMISConstants.CAMEL_CMIS_CHANGE_TYPE, changeEvent.getChangeType().value());
+        properties.put(CamelCMISConstants.CAMEL_CMIS_CHANGE_TIME, changeEvent.getChangeTime());
+        cmisConsumer.sendExchangeWithPropsAndBody(properties, inputStream);
+    }
+
+    private synchronized CheckpointStore getCheckpointStore() {
+        if (checkpointStore == null) {
+            String name = getStateFileName();
+            if (watermark && !changeLog) {
+                name += "-" + Math.abs(query.hashCode());
+                if (shardCount > 1) {
+                    name += "-shard" + shardIndex + "of" + shardCount;
+                }
+            }
+            File file = checkpointFile != null
+                    ? new File(checkpointFile)
+                    : new File(System.getProperty("java.io.tmpdir"), name + ".checkpoint");
+            LOG.info("Using checkpoint file " + file.getAbsolutePath());
+            checkpointStore = new FileCheckpointStore(file);
+        }
+        return checkpointStore;
+    }
+
+    /**
+     * Names the checkpoint and index files of an endpoint without a file of its own after its whole uri,
+     * so endpoints differing in any option, such as the user or the filter, never share them.
+     */
+    private String getStateFileName() {
+        String endpoint = endpointUri != null ? endpointUri : url + repositoryId;
+        return "camel-cmis-" + Integer.toHexString(endpoint.hashCode());
+    }
+
+    private int pollTree(CMISConsumer cmisConsumer) throws Exception {
+        Folder rootFolder = getSession().getRootFolder();
+        TreeWalker treeWalker = createTreeWalker(cmisConsumer);
+        if (!isVersionIndexUsed()) {
+            return treeWalker.walk(rootFolder);
+        }
+
+        ObjectVersionIndex index = getVersionIndex();
+        treeWalker.setVersionIndex(index);
+        ObjectVersionIndex folderIndex = null;
+        if (treeWalker instanceof PruningTreeWalker) {
+            folderIndex = getFolderIndex();
+            ((PruningTreeWalker) treeWalker).setFolderIndex(folderIndex);
+        }
+        int count = treeWalker.walk(rootFolder);
+        // the versions of the nodes still being processed are recorded by their exchanges
+        cmisConsumer.awaitExchanges();
+        index.nextGeneration();
+        if (folderIndex != null) {
+            folderIndex.nextGeneration();
+        }
+        // objects not reached because of readCount must not be taken for deleted ones, and neither must the
+        // documents of the folders a pruning walk did not list, so only its folder index is compacted
+        if (indexRetainPolls > 0 && !treeWalker.isReadCountReached()) {
+            ObjectVersionIndex compactedIndex = folderIndex != null ? folderIndex : index;
+            if (compactedIndex.getGeneration() % indexRetainPolls == 0) {
+                compactedIndex.compact(indexRetainPolls);
+            }
+        }
+        return count;
+    }
+
+    private boolean isVersionIndexUsed() {
+        return skipUnchanged || pruneUnchangedFolders;
+    }
+
+    private synchronized ObjectVersionIndex getVersionIndex() throws IOException {
+        if (versionIndex == null) {
+            File file = indexFile != null
+                    ? new File(indexFile)
+                    : new File(System.getProperty("java.io.tmpdir"), getStateFileName() + ".index");
+            LOG.info("Using object version index " + file.getAbsolutePath());
+            versionIndex = new ObjectVersionIndex(file);
+        }
+        return versionIndex;
+    }
+
+    private synchronized ObjectVersionIndex getFolderIndex() throws IOException {
+        if (folderIndex == null) {
+            File file = indexFile != null
+                    ? new File(indexFile + ".folders")
+                    : new File(System.getProperty("java.io.tmpdir"), getStateFileName() + ".folders.index");
+            LOG.info("Using folder version index " + file.getAbsolutePath());
+            folderIndex = new ObjectVersionIndex(file);
+        }
+        return folderIndex;
+    }
+
+    synchronized void closeVersionIndex() {
+        if (versionIndex != null) {
+            versionIndex.close();
+            versionIndex = null;
+        }
+        if (folderIndex != null) {
+            folderIndex.close();
+            folderIndex = null;
+        }
+    }
+
+    private TreeWalker createTreeWalker(CMISConsumer cmisConsumer) {
+        if (pruneUnchangedFolders) {
+            if (Boolean.TRUE.equals(getSession().getRepositoryInfo().getCapabilities().isGetFolderTreeSupported())) {
+                return new PruningTreeWalker(cmisConsumer, readContent, readCount, operationContext);
+            }
+            LOG.debug("Repository does not support getFolderTree, listing every folder instead");
+        }
+        if (descendantsDepth != 0) {
+            if (Boolean.TRUE.equals(getSession().getRepositoryInfo().getCapabilities().isGetDescendantsSupported())) {
+                return new DescendantsTreeWalker(cmisConsumer, readContent, readCount, operationContext, descendantsDepth);
+            }
+            LOG.debug("Repository does not support getDescendants, listing the children of each folder instead");
+        }
+        if (walkerThreads > 1) {
+            return new ParallelTreeWalker(cmisConsumer, readContent, readCount, operationContext,
+                    cmisConsumer.getWalkerExecutorService(), walkerOrdered, walkerThreads);
+        }
+        if (traversal != null) {
+            return new IterativeTreeWalker(cmisConsumer, readContent, readCount, operationContext, traversal, maxBufferedPages);
+        }
+        return new RecursiveTreeWalker(cmisConsumer, readContent, readCount, operationContext,
+                prefetchDepth, cmisConsumer.getPrefetchExecutorService());
+    }
+
+    private int pollWithQuery(CMISConsumer cmisConsumer) throws Exception {
         int count = 0;
-        int pageNumber = 0;
+        QueryResultIterator rows = newQueryResultIterator(readContent, readCount, executeQuery(query),
+                cmisConsumer.getPrefetchExecutorService());
+        rows.setShard(shardCount, shardIndex);
+        rows.setHeaderMaps(true);
+        try {
+            while (rows.hasNext()) {
+                Map<String, Object> properties = rows.next();
+                InputStream inputStream = (InputStream) properties.remove(CamelCMISConstants.CAMEL_CMIS_CONTENT_STREAM);
+                cmisConsumer.sendShardedRow((String) properties.get(PropertyIds.OBJECT_ID), properties, inputStream);
+                count++;
+            }
+        } finally {
+            rows.close();
+        }
+        return count;
+    }
+
+    /**
+     * Reads only the rows modified since the highest modification date delivered so far, one page
+     * per query, so no poll ever skips through rows it has already seen.
+     */
+    private int pollWithWatermark(CMISConsumer cmisConsumer) throws Exception {
+        CheckpointStore store = getCheckpointStore();
+        QueryWatermark queryWatermark = QueryWatermark.fromCheckpoint(store.load());
+        queryWatermark.setOrderedByObjectId(watermarkOrderedByObjectId);
+        int count = 0;
+        int skip = 0;
         boolean finished = false;
         while (!finished) {
-            ItemIterable<QueryResult> currentPage = itemIterable.skipTo(count).getPage();
-            LOG.debug("Processing page " + pageNumber);
+            long started = System.nanoTime();
+            ItemIterable<QueryResult> currentPage;
+            boolean hasMoreItems;
+            try {
+                currentPage = executeQuery(queryWatermark.applyTo(query)).skipTo(skip).getPage();
+                // fetches the page, which is kept for the iteration below
+                hasMoreItems = currentPage.getHasMoreItems();
+            } catch (CmisBaseException e) {
+                if (!queryWatermark.isOrderedByObjectId()
+                        || !(e instanceof CmisInvalidArgumentException || e instanceof CmisNotSupportedException)) {
+                    throw e;
+                }
+                LOG.warn("Repository cannot order or compare by " + PropertyIds.OBJECT_ID
+                        + ", ordering watermark queries by modification date only: " + e.getMessage());
+                watermarkOrderedByObjectId = false;
+                queryWatermark.setOrderedByObjectId(false);
+                continue;
+            }
+            metrics.recordPage(CMISMetrics.QUERY, started);
+            LOG.debug("Processing rows modified since " + queryWatermark.getTime());
+            int rows = 0;
+            int advanced = 0;
             for (QueryResult item : currentPage) {
-                Map<String, Object> properties = CMISHelper.propertyDataToMap(item.getProperties());
-                if (retrieveContent) {
-                    InputStream inputStream = getContentStreamFor(item);
-                    properties.put(CamelCMISConstants.CAMEL_CMIS_CONTENT_STREAM, inputStream);
+                rows++;
+                String objectId = item.getPropertyValueById(PropertyIds.OBJECT_ID);
+                GregorianCalendar lastModificationDate = item.getPropertyValueById(PropertyIds.LAST_MODIFICATION_DATE);
+                if (objectId == null || lastModificationDate == null) {
+                    throw new RuntimeCamelException("Watermark queries must select " + PropertyIds.OBJECT_ID
+                            + " and " + PropertyIds.LAST_MODIFICATION_DATE + ": " + query);
+                }
+                if (queryWatermark.isDelivered(objectId, lastModificationDate)) {
+                    continue;
+                }
+                if (shardCount > 1 && CMISHelper.shardOf(objectId, shardCount) != shardIndex) {
+                    // another shard delivers it, but this one's watermark still moves past it
+                    queryWatermark.advance(objectId, lastModificationDate);
+                    advanced++;
+                    continue;
                 }
 
-                result.add(properties);
+                Map<String, Object> properties = headersOf(item);
+                InputStream inputStream = readContent ? getContentStreamFor(item) : null;
+                cmisConsumer.sendShardedRow(objectId, properties, inputStream);
+                queryWatermark.advance(objectId, lastModificationDate);
+                advanced++;
                 count++;
-                if (count == readSize) {
+                if (count == readCount) {
                     finished = true;
                     break;
                 }
             }
-            pageNumber++;
-            if (!currentPage.getHasMoreItems()) {
+            // only rows the route is done with are covered by the checkpoint
+            if (!cmisConsumer.awaitExchanges()) {
+                LOG.warn("Query rows failed, the next poll reads again the rows modified since the saved watermark");
+                break;
+            }
+            store.save(queryWatermark.toCheckpoint());
+
+            if (rows == 0 || !hasMoreItems) {
                 finished = true;
             }
+            // a page without new rows means more rows share the watermark date than fit in one page
+            skip = advanced == 0 ? skip + rows : 0;
+        }
+        return count;
+    }
+
+    /**
+     * Reads all the rows into a List, and closes them.
+     */
+    public List<Map<String, Object>> retrieveResult(QueryResultIterator iterator) {
+        List<Map<String, Object>> result = new ArrayList<Map<String, Object>>();
+        try {
+            while (iterator.hasNext()) {
+                result.add(iterator.next());
+            }
+        } finally {
+            iterator.close();
         }
         return result;
     }
 
+    /**
+     * @return the rows, to be closed unless they are read to the end
+     */
+    public QueryResultIterator iterateResult(boolean retrieveContent, int readSize, ItemIterable<QueryResult> itemIterable,
+                                             ExecutorService prefetchExecutorService) {
+        QueryResultIterator rows = newQueryResultIterator(retrieveContent, readSize, itemIterable, prefetchExecutorService);
+        // the consumer counts the rows it sends itself
+        rows.setMetrics(metrics);
+        return rows;
+    }
+
+    private QueryResultIterator newQueryResultIterator(boolean retrieveContent, int readSize, ItemIterable<QueryResult> itemIterable,
+                                                       ExecutorService prefetchExecutorService) {
+        PagingIterator<QueryResult> rows = new PagingIterator<QueryResult>(itemIterable, pageSize, prefetchDepth, prefetchExecutorService);
+        rows.setMetrics(metrics, CMISMetrics.QUERY);
+        QueryResultIterator iterator = new QueryResultIterator(this, retrieveContent, readSize, rows);
+        iterator.setContentRange(contentOffset, contentLength);
+        // the rows may be read after the session is released, or from another thread
+        iterator.setSession(getSession());
+        return iterator;
+    }
+
     public ItemIterable<QueryResult> executeQuery(String query) {
-        OperationContext operationContext = new OperationContextImpl();
-        operationContext.setMaxItemsPerPage(pageSize);
-        return session.query(query, false, operationContext);
+        return getSession().query(query, false, operationContext);
+    }
+
+    /**
+     * @return the headers of a node, as selected by the projection and multiValued options
+     */
+    public Map<String, Object> propertiesOf(CmisObject cmisObject) {
+        if (multiValued) {
+            // the properties of objects carry their definitions
+            return CMISHelper.propertyDataToMultiValuedHeaders(cmisObject.getProperties(), projection, null);
+        }
+        return CMISHelper.propertyDataToHeaders(cmisObject.getProperties(), projection);
+    }
+
+    /**
+     * @return the properties of a query row returned by the query producer, as selected by the
+     *         projection and multiValued options
+     */
+    public Map<String, Object> propertiesOf(QueryResult row) {
+        if (multiValued) {
+            return CMISHelper.propertyDataToMultiValuedMap(row.getProperties(), projection, getObjectType(row));
+        }
+        return CMISHelper.propertyDataToMap(row.getProperties(), projection);
+    }
+
+    /**
+     * @return the headers of a query row sent by the consumer, as selected by the projection and
+     *         multiValued options
+     */
+    public Map<String, Object> headersOf(QueryResult row) {
+        if (multiValued) {
+            return CMISHelper.propertyDataToMultiValuedHeaders(row.getProperties(), projection, getObjectType(row));
+        }
+        return CMISHelper.propertyDataToHeaders(row.getProperties(), projection);
     }
 
-    public Document getDocument(QueryResult queryResult) {
-        if (CamelCMISConstants.CMIS_DOCUMENT.equals(queryResult.getPropertyValueById(PropertyIds.OBJECT_TYPE_ID))) {
-            String objectId = (String) queryResult.getPropertyById(PropertyIds.OBJECT_ID).getFirstValue();
-            ObjectIdImpl objectIdImpl = new ObjectIdImpl(objectId);
-            return (org.apache.chemistry.opencmis.client.api.Document) session.getObject(objectIdImpl);
+    /**
+     * @return the type of the row from the type definition cache
+     */
+    private ObjectType getObjectType(QueryResult row) {
+        String objectTypeId = row.getPropertyValueById(PropertyIds.OBJECT_TYPE_ID);
+        if (objectTypeId == null) {
+            // which properties are multi-valued is only known from the definitions of the type of the row
+            throw new RuntimeCamelException("Queries of multiValued endpoints must select " + PropertyIds.OBJECT_TYPE_ID);
         }
-        return null;
+        return typeDefinitionCache.getType(getSession(), objectTypeId);
     }
 
+    /**
+     * Opens the content of a query result row straight from its object id, without fetching
+     * the object itself first. The AtomPub binding still looks up the content link of the
+     * object with a request of its own, as the query feed does not fill its link cache.
+     */
     public InputStream getContentStreamFor(QueryResult item) {
-        Document document = getDocument(item);
-        if (document != null && document.getContentStream() != null) {
-            return document.getContentStream().getStream();
+        return getContentStreamFor(item, contentOffset, contentLength);
+    }
+
+    /**
+     * Opens the given range of the content of a query result row, like {@link #getContentStreamFor(QueryResult)}.
+     *
+     * @param offset the byte reading starts at
+     * @param length the number of bytes to read, -1 to read up to the end
+     */
+    public InputStream getContentStreamFor(QueryResult item, long offset, long length) {
+        if (!isDocument(item)) {
+            return null;
+        }
+        String objectId = item.getPropertyValueById(PropertyIds.OBJECT_ID);
+        PropertyData<Object> contentStreamLength = item.getPropertyById(PropertyIds.CONTENT_STREAM_LENGTH);
+        if (objectId == null || (contentStreamLength != null && contentStreamLength.getFirstValue() == null)) {
+            return null;
+        }
+        return getContentStream(objectId, offset, length);
+    }
+
+    /**
+     * Opens the content of a document, or the range of it given by contentOffset and contentLength.
+     *
+     * @return the content or <tt>null</tt> if the document has none
+     */
+    public InputStream getContentStream(Document document) {
+        if (!isRangeRead()) {
+            long started = System.nanoTime();
+            ContentStream contentStream = document.getContentStream();
+            metrics.record(CMISMetrics.GET_CONTENT_STREAM, started);
+            return contentStream != null ? metrics.countRead(contentStream.getStream()) : null;
+        }
+        return getContentStream(document.getId(), contentOffset, contentLength);
+    }
+
+    private boolean isRangeRead() {
+        return contentOffset > 0 || contentLength >= 0;
+    }
+
+    private InputStream getContentStream(String objectId, long offset, long length) {
+        long started = System.nanoTime();
+        try {
+            Session session = getSession();
+            ContentStream contentStream = session.getBinding().getObjectService().getContentStream(session.getRepositoryInfo().getId(),
+                    objectId, null, offset > 0 ? BigInteger.valueOf(offset) : null, length >= 0 ? BigInteger.valueOf(length) : null, null);
+            return contentStream != null ? metrics.countRead(contentStream.getStream()) : null;
+        } catch (CmisConstraintException e) {
+            LOG.debug("Document " + objectId + " has no content");
+            return null;
+        } finally {
+            metrics.record(CMISMetrics.GET_CONTENT_STREAM, started);
         }
-        return null;
     }
 
     public CmisObject getObjectByPath(String path) {
-        return session.getObjectByPath(path);
+        return getSession().getObjectByPath(path);
+    }
+
+    public String getFolderIdByPath(String path) {
+        if (folderPathCache != null) {
+            String folderId = folderPathCache.get(path);
+            if (folderId != null) {
+                return folderId;
+            }
+        }
+        long started = System.nanoTime();
+        CmisObject cmisObject = getSession().getObjectByPath(path, operationContext);
+        metrics.record(CMISMetrics.GET_OBJECT_BY_PATH, started);
+        if (!CMISHelper.isFolder(cmisObject)) {
+            throw new CmisObjectNotFoundException("Object at " + path + " is not a folder");
+        }
+        if (folderPathCache != null) {
+            folderPathCache.put(path, cmisObject.getId());
+        }
+        return cmisObject.getId();
+    }
+
+    public String createFolder(String parentFolderPath, String parentFolderId, Map<String, Object> properties) {
+        long started = System.nanoTime();
+        try {
+            return getSession().createFolder(properties, new ObjectIdImpl(parentFolderId)).getId();
+        } catch (CmisBaseException e) {
+            // the cached parent may have been deleted, moved or replaced meanwhile
+            invalidateFolderPath(parentFolderPath);
+            throw e;
+        } finally {
+            metrics.record(CMISMetrics.CREATE_FOLDER, started);
+        }
+    }
+
+    public String createDocument(String parentFolderPath, String parentFolderId, Map<String, Object> properties,
+                                 ContentStream contentStream, VersioningState versioningState) {
+        long started = System.nanoTime();
+        try {
+            return getSession().createDocument(properties, new ObjectIdImpl(parentFolderId), contentStream, versioningState).getId();
+        } catch (CmisBaseException e) {
+            invalidateFolderPath(parentFolderPath);
+            throw e;
+        } finally {
+            metrics.record(CMISMetrics.CREATE_DOCUMENT, started);
+        }
+    }
+
+    private void invalidateFolderPath(String path) {
+        if (folderPathCache != null) {
+            folderPathCache.invalidate(path);
+        }
+    }
+
+    public FolderPathCache getFolderPathCache() {
+        return folderPathCache;
+    }
+
+    public CMISMetrics getMetrics() {
+        return metrics;
     }
 
     public boolean isObjectTypeVersionable(String objectType) {
-        return ((DocumentType) session.getTypeDefinition(objectType)).isVersionable();
+        return typeDefinitionCache.isVersionable(getSession(), objectType);
+    }
+
+    /**
+     * @return the base type of the given object type, or <tt>null</tt> if the repository does not know it
+     */
+    public BaseTypeId getBaseTypeId(String objectTypeId) {
+        return typeDefinitionCache.getBaseTypeId(getSession(), objectTypeId);
+    }
+
+    /**
+     * Tells whether a query result row is a document, including the subtypes of <tt>cmis:document</tt>.
+     */
+    public boolean isDocument(QueryResult item) {
+        String baseTypeId = item.getPropertyValueById(PropertyIds.BASE_TYPE_ID);
+        if (baseTypeId != null) {
+            return CamelCMISConstants.CMIS_DOCUMENT.equals(baseTypeId);
+        }
+        String objectTypeId = item.getPropertyValueById(PropertyIds.OBJECT_TYPE_ID);
+        return objectTypeId != null && getBaseTypeId(objectTypeId) == BaseTypeId.CMIS_DOCUMENT;
     }
 
     public ContentStream createContentStream(String fileName, byte[] buf, String mimeType) throws Exception {
-        return buf != null ? session.getObjectFactory().createContentStream(fileName, buf.length, mimeType, new ByteArrayInputStream(buf)) : null;
+        return buf != null ? getSession().getObjectFactory().createContentStream(fileName, buf.length, mimeType,
+                metrics.countWritten(new ByteArrayInputStream(buf))) : null;
+    }
+
+    public ContentStream createContentStream(String fileName, InputStream stream, long length, String mimeType) throws Exception {
+        return stream != null ? getSession().getObjectFactory().createContentStream(fileName, length, mimeType, metrics.countWritten(stream)) : null;
     }
 
     public void setUsername(String username) {
@@ -174,6 +860,54 @@ public class CMISSessionFacade {
         this.readContent = readContent;
     }
 
+    /**
+     * Reads the content of every node completely before the exchange is sent, so the body can be
+     * read again and the connection is released at once.
+     */
+    public void setCacheContent(boolean cacheContent) {
+        this.cacheContent = cacheContent;
+    }
+
+    /**
+     * Size in bytes above which cached content is spooled to a file instead of kept in memory.
+     */
+    public void setSpoolThreshold(long spoolThreshold) {
+        this.spoolThreshold = spoolThreshold;
+    }
+
+    public void setSpoolDirectory(String spoolDirectory) {
+        this.spoolDirectory = spoolDirectory;
+    }
+
+    /**
+     * @return the spool for the content of the nodes, or <tt>null</tt> if content is streamed as it is
+     */
+    public ContentSpool getContentSpool() {
+        return contentSpool;
+    }
+
+    public long getContentOffset() {
+        return contentOffset;
+    }
+
+    /**
+     * Byte of the content reading starts at.
+     */
+    public void setContentOffset(long contentOffset) {
+        this.contentOffset = contentOffset;
+    }
+
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    /**
+     * Number of bytes of content to read, -1 to read up to the end.
+     */
+    public void setContentLength(long contentLength) {
+        this.contentLength = contentLength;
+    }
+
     public void setReadCount(int readCount) {
         this.readCount = readCount;
     }
@@ -182,7 +916,210 @@ public class CMISSessionFacade {
         this.query = query;
     }
 
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public void setShardCount(int shardCount) {
+        this.shardCount = shardCount;
+    }
+
+    public void setShardIndex(int shardIndex) {
+        this.shardIndex = shardIndex;
+    }
+
+    public int getShardThreads() {
+        return shardThreads;
+    }
+
+    public void setShardThreads(int shardThreads) {
+        this.shardThreads = shardThreads;
+    }
+
+    public void setWatermark(boolean watermark) {
+        this.watermark = watermark;
+    }
+
     public void setPageSize(int pageSize) {
         this.pageSize = pageSize;
     }
+
+    public int getPrefetchDepth() {
+        return prefetchDepth;
+    }
+
+    public void setPrefetchDepth(int prefetchDepth) {
+        this.prefetchDepth = prefetchDepth;
+    }
+
+    public void setFilter(String filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Limits the headers of the nodes and query rows to the given comma separated property ids.
+     * The object id is always kept, as sharding relies on it.
+     */
+    public void setProjection(String projection) {
+        Set<String> propertyIds = new HashSet<String>();
+        for (String propertyId : projection.split(",")) {
+            if (propertyId.trim().length() > 0) {
+                propertyIds.add(propertyId.trim());
+            }
+        }
+        propertyIds.add(PropertyIds.OBJECT_ID);
+        this.projection = propertyIds;
+    }
+
+    /**
+     * Maps multi-valued properties to the List of all their values instead of their first one, and
+     * dates and integers to {@link java.util.Date} and {@link Long}.
+     */
+    public void setMultiValued(boolean multiValued) {
+        this.multiValued = multiValued;
+    }
+
+    public void setIncludeAllowableActions(boolean includeAllowableActions) {
+        this.includeAllowableActions = includeAllowableActions;
+    }
+
+    public void setIncludeAcls(boolean includeAcls) {
+        this.includeAcls = includeAcls;
+    }
+
+    public void setIncludePolicies(boolean includePolicies) {
+        this.includePolicies = includePolicies;
+    }
+
+    public void setIncludeRelationships(String includeRelationships) {
+        this.includeRelationships = includeRelationships;
+    }
+
+    public void setRenditionFilter(String renditionFilter) {
+        this.renditionFilter = renditionFilter;
+    }
+
+    public boolean isStreamResults() {
+        return streamResults;
+    }
+
+    public void setStreamResults(boolean streamResults) {
+        this.streamResults = streamResults;
+    }
+
+    public int getWalkerThreads() {
+        return walkerThreads;
+    }
+
+    public void setWalkerThreads(int walkerThreads) {
+        this.walkerThreads = walkerThreads;
+    }
+
+    public void setWalkerOrdered(boolean walkerOrdered) {
+        this.walkerOrdered = walkerOrdered;
+    }
+
+    public void setTraversal(String traversal) {
+        this.traversal = traversal;
+    }
+
+    public void setMaxBufferedPages(int maxBufferedPages) {
+        this.maxBufferedPages = maxBufferedPages;
+    }
+
+    public void setDescendantsDepth(int descendantsDepth) {
+        this.descendantsDepth = descendantsDepth;
+    }
+
+    public boolean isBatch() {
+        return batch;
+    }
+
+    public void setBatch(boolean batch) {
+        this.batch = batch;
+    }
+
+    public int getBatchThreads() {
+        return batchThreads;
+    }
+
+    public void setBatchThreads(int batchThreads) {
+        this.batchThreads = batchThreads;
+    }
+
+    public int getMaxInflightExchanges() {
+        return maxInflightExchanges;
+    }
+
+    public void setMaxInflightExchanges(int maxInflightExchanges) {
+        this.maxInflightExchanges = maxInflightExchanges;
+    }
+
+    public void setBindingType(String bindingType) {
+        this.bindingType = bindingType;
+    }
+
+    public void setLocalFactory(String localFactory) {
+        this.localFactory = localFactory;
+    }
+
+    public void setLazyStartup(boolean lazyStartup) {
+        this.lazyStartup = lazyStartup;
+    }
+
+    public void setConnectRetries(int connectRetries) {
+        this.connectRetries = connectRetries;
+    }
+
+    public void setConnectRetryDelay(long connectRetryDelay) {
+        this.connectRetryDelay = connectRetryDelay;
+    }
+
+    public void setFolderCacheSize(int folderCacheSize) {
+        this.folderCacheSize = folderCacheSize;
+    }
+
+    public void setFolderCacheTtl(long folderCacheTtl) {
+        this.folderCacheTtl = folderCacheTtl;
+    }
+
+    public void setCachedTypes(String cachedTypes) {
+        this.cachedTypes = cachedTypes;
+    }
+
+    public void setTypeCacheRefresh(long typeCacheRefresh) {
+        this.typeCacheRefresh = typeCacheRefresh;
+    }
+
+    public void setChangeLog(boolean changeLog) {
+        this.changeLog = changeLog;
+    }
+
+    public void setCheckpointFile(String checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
+    public void setCheckpointStore(CheckpointStore checkpointStore) {
+        this.checkpointStore = checkpointStore;
+    }
+
+    public void setSkipUnchanged(boolean skipUnchanged) {
+        this.skipUnchanged = skipUnchanged;
+    }
+
+    public void setPruneUnchangedFolders(boolean pruneUnchangedFolders) {
+        this.pruneUnchangedFolders = pruneUnchangedFolders;
+    }
+
+    public void setIndexFile(String indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    public void setIndexRetainPolls(int indexRetainPolls) {
+        this.indexRetainPolls = indexRetainPolls;
+    }
 }
@@ -0,0 +1,152 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel;
+
+import org.apache.chemistry.opencmis.client.api.Repository;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.client.runtime.SessionFactoryImpl;
+import org.apache.chemistry.opencmis.commons.SessionParameter;
+import org.apache.chemistry.opencmis.commons.enums.IncludeRelationships;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisBaseException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shares CMIS sessions between the endpoints connecting to the same repository with the same
+ * session parameters (binding, url, repository and credentials). OpenCMIS sessions are thread safe,
+ * so each distinct set of parameters gets a small pool of sessions handed out round robin.
+ * <p/>
+ * When a health check interval is set, a session which has not been checked for that long is
+ * probed with a lightweight request for the root folder id, and replaced if the probe fails. The
+ * probe runs outside the lock of the pool, so it only delays the thread which made it.
+ */
+public class CMISSessionRegistry {
+    private static final transient Log LOG = LogFactory.getLog(CMISSessionRegistry.class);
+
+    private final Map<Map<String, String>, SessionPool> pools = new HashMap<Map<String, String>, SessionPool>();
+    private int poolSize = 1;
+    private long healthCheckInterval;
+
+    public Session getSession(Map<String, String> parameters) {
+        SessionPool pool;
+        synchronized (pools) {
+            pool = pools.get(parameters);
+            if (pool == null) {
+                pool = new SessionPool(new HashMap<String, String>(parameters), Math.max(1, poolSize));
+                pools.put(new HashMap<String, String>(parameters), pool);
+            }
+        }
+        return pool.next();
+    }
+
+    public void clear() {
+        synchronized (pools) {
+            pools.clear();
+        }
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public void setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    public long getHealthCheckInterval() {
+        return healthCheckInterval;
+    }
+
+    public void setHealthCheckInterval(long healthCheckInterval) {
+        this.healthCheckInterval = healthCheckInterval;
+    }
+
+    private final class SessionPool {
+        private final Map<String, String> parameters;
+        private final Session[] sessions;
+        private final long[] lastChecked;
+        private int next;
+
+        private SessionPool(Map<String, String> parameters, int size) {
+            this.parameters = parameters;
+            this.sessions = new Session[size];
+            this.lastChecked = new long[size];
+        }
+
+        private Session next() {
+            int index;
+            Session session;
+            boolean checkDue;
+            synchronized (this) {
+                index = next;
+                next = (next + 1) % sessions.length;
+
+                long now = System.currentTimeMillis();
+                session = sessions[index];
+                checkDue = session != null && healthCheckInterval > 0 && now - lastChecked[index] > healthCheckInterval;
+                if (checkDue) {
+                    // the other threads keep using the session meanwhile instead of checking it too
+                    lastChecked[index] = now;
+                }
+                if (session == null) {
+                    session = createSession();
+                    sessions[index] = session;
+                    lastChecked[index] = now;
+                }
+            }
+            // the probe is a request to the repository, so it must not hold up the threads taking the other sessions
+            if (!checkDue || isHealthy(session)) {
+                return session;
+            }
+            synchronized (this) {
+                if (sessions[index] == session) {
+                    LOG.info("Replacing unhealthy CMIS session of repository " + parameters.get(SessionParameter.REPOSITORY_ID));
+                    sessions[index] = createSession();
+                    lastChecked[index] = System.currentTimeMillis();
+                }
+                return sessions[index];
+            }
+        }
+
+        private Session createSession() {
+            if (parameters.get(SessionParameter.REPOSITORY_ID) != null) {
+                return SessionFactoryImpl.newInstance().createSession(parameters);
+            }
+            List<Repository> repositories = SessionFactoryImpl.newInstance().getRepositories(parameters);
+            Repository repository = repositories.get(0);
+            // remember the discovered repository, so the next sessions of the pool skip the discovery
+            parameters.put(SessionParameter.REPOSITORY_ID, repository.getId());
+            return repository.createSession();
+        }
+
+        private boolean isHealthy(Session session) {
+            try {
+                String repositoryId = session.getRepositoryInfo().getId();
+                session.getBinding().getObjectService().getObject(repositoryId, session.getRepositoryInfo().getRootFolderId(),
+                        "cmis:objectId", false, IncludeRelationships.NONE, "cmis:none", false, false, null);
+                return true;
+            } catch (CmisBaseException e) {
+                LOG.warn("CMIS session health check failed: " + e.getMessage());
+                return false;
+            }
+        }
+    }
+}
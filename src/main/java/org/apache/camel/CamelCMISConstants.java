@@ -9,4 +9,9 @@ public interface CamelCMISConstants {
     String CAMEL_CMIS_RETRIEVE_CONTENT = "CamelCMISRetrieveContent";
     String CAMEL_CMIS_READ_SIZE = "CamelCMISReadSize";
     String CAMEL_CMIS_CONTENT_STREAM = "CamelCMISContent";
+    String CAMEL_CMIS_CONTENT_OFFSET = "CamelCMISContentOffset";
+    String CAMEL_CMIS_CONTENT_LENGTH = "CamelCMISContentLength";
+    String CAMEL_CMIS_BATCH_ERRORS = "CamelCMISBatchErrors";
+    String CAMEL_CMIS_CHANGE_TYPE = "CamelCMISChangeType";
+    String CAMEL_CMIS_CHANGE_TIME = "CamelCMISChangeTime";
 }
@@ -0,0 +1,110 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel;
+
+import org.apache.camel.converter.stream.InputStreamCache;
+import org.apache.camel.util.IOHelper;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reads content streams completely, so the connection they come from is released before the exchange
+ * is processed and the body can be read more than once. Content up to the threshold is kept in memory,
+ * larger content is moved to a temporary file with {@link FileChannel#transferFrom}.
+ */
+public class ContentSpool {
+    private static final transient Log LOG = LogFactory.getLog(ContentSpool.class);
+    private static final int BUFFER_SIZE = 8192;
+    private static final long TRANSFER_SIZE = 1024 * 1024;
+
+    private final long threshold;
+    private final File directory;
+
+    /**
+     * @param directory where to create the files, or <tt>null</tt> for the default temporary directory
+     * @throws IllegalArgumentException if the directory does not exist and cannot be created
+     */
+    public ContentSpool(long threshold, File directory) {
+        this.threshold = threshold;
+        this.directory = directory;
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalArgumentException("Cannot create spool directory " + directory.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Reads the stream to its end and closes it.
+     *
+     * @return an {@link InputStreamCache} or a {@link SpooledContent}, whose file the caller must delete
+     */
+    public StreamCache spool(InputStream inputStream) throws IOException {
+        try {
+            ByteArrayOutputStream memory = new ByteArrayOutputStream((int) Math.min(threshold, BUFFER_SIZE));
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while (memory.size() <= threshold && (n = inputStream.read(buffer)) != -1) {
+                memory.write(buffer, 0, n);
+            }
+            if (memory.size() <= threshold) {
+                return new InputStreamCache(memory.toByteArray());
+            }
+            return spoolToFile(memory, inputStream);
+        } finally {
+            IOHelper.close(inputStream);
+        }
+    }
+
+    private SpooledContent spoolToFile(ByteArrayOutputStream memory, InputStream inputStream) throws IOException {
+        File file = File.createTempFile("camel-cmis-", ".content", directory);
+        FileOutputStream output = null;
+        boolean spooled = false;
+        try {
+            output = new FileOutputStream(file);
+            FileChannel channel = output.getChannel();
+            ByteBuffer head = ByteBuffer.wrap(memory.toByteArray());
+            while (head.hasRemaining()) {
+                channel.write(head);
+            }
+            ReadableByteChannel source = Channels.newChannel(inputStream);
+            long position = channel.position();
+            long transferred;
+            // a blocking source only transfers nothing once it is exhausted
+            while ((transferred = channel.transferFrom(source, position, TRANSFER_SIZE)) > 0) {
+                position += transferred;
+            }
+            output.close();
+            spooled = true;
+            LOG.debug("Spooled " + position + " bytes of content to " + file);
+            return new SpooledContent(file, position);
+        } finally {
+            if (!spooled) {
+                IOHelper.close(output);
+                file.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel;
+
+import org.apache.chemistry.opencmis.client.api.FileableCmisObject;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.chemistry.opencmis.client.api.Tree;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.List;
+
+/**
+ * Walks the folder tree fetching whole subtrees with <tt>getDescendants</tt>, one request per
+ * <tt>depth</tt> levels instead of one request per folder and page. The folders found on the last
+ * level of a subtree are expanded with another <tt>getDescendants</tt> call. A depth of -1 fetches
+ * the whole tree at once.
+ * <p/>
+ * Only usable when the repository advertises <tt>capabilityGetDescendants</tt>.
+ */
+public class DescendantsTreeWalker extends TreeWalker {
+    private static final transient Log LOG = LogFactory.getLog(DescendantsTreeWalker.class);
+
+    private final int depth;
+
+    public DescendantsTreeWalker(CMISConsumer cmisConsumer, boolean readContent, int readCount, OperationContext operationContext, int depth) {
+        super(cmisConsumer, readContent, readCount, operationContext);
+        validateDepth(depth);
+        this.depth = depth;
+    }
+
+    /**
+     * Checks the descendantsDepth option when the endpoint is created.
+     */
+    static void validateDepth(int depth) {
+        if (depth == 0 || depth < -1) {
+            throw new IllegalArgumentException("Descendants depth must be -1 or greater than 0, was " + depth);
+        }
+    }
+
+    int walk(Folder rootFolder) throws Exception {
+        processFolderNode(rootFolder);
+        processDescendants(rootFolder);
+        return getTotalPolled();
+    }
+
+    private void processDescendants(Folder folder) throws Exception {
+        LOG.debug("Fetching descendants of " + folder.getPath() + " with depth " + depth);
+        long started = System.nanoTime();
+        List<Tree<FileableCmisObject>> descendants = folder.getDescendants(depth, operationContext);
+        metrics.recordPage(CMISMetrics.GET_DESCENDANTS, started);
+        processTrees(folder, descendants, 1);
+    }
+
+    private void processTrees(Folder parentFolder, List<Tree<FileableCmisObject>> trees, int level) throws Exception {
+        if (trees == null) {
+            return;
+        }
+        for (Tree<FileableCmisObject> tree : trees) {
+            if (isReadCountReached()) {
+                return;
+            }
+            FileableCmisObject item = tree.getItem();
+            if (CMISHelper.isFolder(item)) {
+                Folder childFolder = (Folder) item;
+                processFolderNode(childFolder);
+                if (depth > 0 && level >= depth) {
+                    processDescendants(childFolder);
+                } else {
+                    processTrees(childFolder, tree.getChildren(), level + 1);
+                }
+            } else {
+                processNonFolderNode(item, parentFolder);
+            }
+        }
+    }
+}
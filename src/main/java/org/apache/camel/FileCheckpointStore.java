@@ -0,0 +1,76 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel;
+
+import org.apache.camel.util.IOHelper;
+
+import java.io.*;
+
+/**
+ * {@link CheckpointStore} keeping the checkpoint in a single file. The file is first written
+ * next to the target and then renamed, so a crash never leaves a half written checkpoint.
+ */
+public class FileCheckpointStore implements CheckpointStore {
+    private static final String ENCODING = "UTF-8";
+    private final File file;
+
+    public FileCheckpointStore(File file) {
+        this.file = file;
+    }
+
+    public synchronized String load() throws Exception {
+        if (!file.exists()) {
+            return null;
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), ENCODING));
+        try {
+            StringBuilder checkpoint = new StringBuilder();
+            char[] buf = new char[1024];
+            int read;
+            while ((read = reader.read(buf)) != -1) {
+                checkpoint.append(buf, 0, read);
+            }
+            return checkpoint.length() > 0 ? checkpoint.toString() : null;
+        } finally {
+            IOHelper.close(reader);
+        }
+    }
+
+    public synchronized void save(String checkpoint) throws Exception {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), ENCODING);
+        try {
+            writer.write(checkpoint != null ? checkpoint : "");
+        } finally {
+            IOHelper.close(writer);
+        }
+        if (!tmp.renameTo(file)) {
+            // some platforms cannot rename over an existing file
+            if (!file.delete() || !tmp.renameTo(file)) {
+                throw new IOException("Cannot write checkpoint file " + file);
+            }
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+}
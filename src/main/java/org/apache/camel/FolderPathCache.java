@@ -0,0 +1,103 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Thread safe, size bounded LRU cache of folder paths to folder ids, whose entries expire
+ * after a time to live.
+ */
+public class FolderPathCache {
+    private final int maxSize;
+    private final long timeToLive;
+    private final Map<String, CacheEntry> entries;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public FolderPathCache(int maxSize, long timeToLive) {
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+        this.entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                if (size() > FolderPathCache.this.maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return the cached folder id or <tt>null</tt> if the path is not cached or its entry expired
+     */
+    public synchronized String get(String path) {
+        CacheEntry entry = entries.get(path);
+        if (entry != null && timeToLive > 0 && System.currentTimeMillis() - entry.created > timeToLive) {
+            entries.remove(path);
+            evictions++;
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.folderId;
+    }
+
+    public synchronized void put(String path, String folderId) {
+        entries.put(path, new CacheEntry(folderId));
+    }
+
+    public synchronized void invalidate(String path) {
+        if (entries.remove(path) != null) {
+            evictions++;
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    private static final class CacheEntry {
+        private final String folderId;
+        private final long created = System.currentTimeMillis();
+
+        private CacheEntry(String folderId) {
+            this.folderId = folderId;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel;
+
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.ItemIterable;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.ListIterator;
+
+/**
+ * Walks the folder tree with an explicit list of folder cursors, used as a stack or a queue, instead of Java recursion.
+ * <p/>
+ * Depth first sends the nodes in the same root to leaves order as {@link RecursiveTreeWalker}.
+ * A cursor only remembers the offset of its next child, so when more than <tt>maxBufferedPages</tt>
+ * ancestors hold a page of children, the pages of the topmost ones are dropped and fetched again
+ * from that offset once the walk comes back to them. Memory is then bound by the cap and the depth,
+ * not by the page size times the depth.
+ * <p/>
+ * Breadth first finishes the listing of a folder before moving to the next one, so only one page
+ * is buffered at a time, while the queue of folders still to list grows with the width of the tree.
+ */
+public class IterativeTreeWalker extends TreeWalker {
+    public static final String DEPTH_FIRST = "depthFirst";
+    public static final String BREADTH_FIRST = "breadthFirst";
+
+    private static final transient Log LOG = LogFactory.getLog(IterativeTreeWalker.class);
+
+    private final boolean depthFirst;
+    private final int maxBufferedPages;
+    private int bufferedPages;
+
+    public IterativeTreeWalker(CMISConsumer cmisConsumer, boolean readContent, int readCount, OperationContext operationContext,
+                               String traversal, int maxBufferedPages) {
+        super(cmisConsumer, readContent, readCount, operationContext);
+        this.depthFirst = DEPTH_FIRST.equals(traversal);
+        this.maxBufferedPages = Math.max(1, maxBufferedPages);
+    }
+
+    /**
+     * Checks the traversal option when the endpoint is created.
+     */
+    static void validateTraversal(String traversal) {
+        if (!DEPTH_FIRST.equals(traversal) && !BREADTH_FIRST.equals(traversal)) {
+            throw new IllegalArgumentException("Unknown traversal " + traversal + ", expected " + DEPTH_FIRST + " or " + BREADTH_FIRST);
+        }
+    }
+
+    int walk(Folder rootFolder) throws Exception {
+        LinkedList<FolderCursor> cursors = new LinkedList<FolderCursor>();
+        processFolderNode(rootFolder);
+        cursors.addFirst(new FolderCursor(rootFolder));
+
+        while (!cursors.isEmpty() && !isReadCountReached()) {
+            FolderCursor cursor = cursors.getFirst();
+            CmisObject child = cursor.next();
+            if (child == null) {
+                cursors.removeFirst();
+                cursor.release();
+            } else if (CMISHelper.isFolder(child)) {
+                Folder childFolder = (Folder) child;
+                processFolderNode(childFolder);
+                if (depthFirst) {
+                    cursors.addFirst(new FolderCursor(childFolder));
+                } else {
+                    cursors.addLast(new FolderCursor(childFolder));
+                }
+            } else {
+                processNonFolderNode(child, cursor.folder);
+            }
+
+            if (bufferedPages > maxBufferedPages) {
+                releaseOldestPages(cursors);
+            }
+        }
+        return getTotalPolled();
+    }
+
+    private void releaseOldestPages(LinkedList<FolderCursor> cursors) {
+        ListIterator<FolderCursor> fromBottom = cursors.listIterator(cursors.size());
+        while (bufferedPages > maxBufferedPages && fromBottom.hasPrevious()) {
+            FolderCursor cursor = fromBottom.previous();
+            if (cursor != cursors.getFirst()) {
+                cursor.release();
+            }
+        }
+    }
+
+    private final class FolderCursor {
+        private final Folder folder;
+        private long offset;
+        private ItemIterable<CmisObject> page;
+        private Iterator<CmisObject> iterator;
+
+        private FolderCursor(Folder folder) {
+            this.folder = folder;
+        }
+
+        /**
+         * @return the next child or <tt>null</tt> when the folder has been listed completely
+         */
+        private CmisObject next() {
+            if (iterator != null && !iterator.hasNext()) {
+                boolean hasMoreItems = page.getHasMoreItems();
+                release();
+                if (!hasMoreItems) {
+                    return null;
+                }
+            }
+            if (iterator == null) {
+                LOG.debug("Fetching children of " + folder.getPath() + " from " + offset);
+                long started = System.nanoTime();
+                page = folder.getChildren(operationContext).skipTo(offset).getPage();
+                iterator = page.iterator();
+                // fetches the page
+                boolean empty = !iterator.hasNext();
+                metrics.recordPage(CMISMetrics.GET_CHILDREN, started);
+                bufferedPages++;
+                if (empty) {
+                    release();
+                    return null;
+                }
+            }
+            offset++;
+            return iterator.next();
+        }
+
+        private void release() {
+            if (page != null) {
+                page = null;
+                iterator = null;
+                bufferedPages--;
+            }
+        }
+    }
+}
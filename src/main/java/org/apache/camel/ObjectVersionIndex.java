@@ -0,0 +1,293 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Remembers the version, that is the change token or last modification date, each object had
+ * when it was last polled, so unchanged objects can be skipped by the next poll.
+ * <p/>
+ * The index is an open addressing hash table in a memory mapped file: each entry takes 24 bytes
+ * on disk and none on the heap. Object ids and versions are stored as 64 bit hashes, so two
+ * different ids share an entry with a probability of about n^2 / 2^65, which is negligible even
+ * for tens of millions of objects.
+ * <p/>
+ * Every entry records the poll it was last seen in. {@link #compact(int)} drops the entries which
+ * have not been seen for a number of polls, that is the objects deleted from the repository.
+ */
+public class ObjectVersionIndex {
+    private static final transient Log LOG = LogFactory.getLog(ObjectVersionIndex.class);
+
+    private static final int MAGIC = 0x434d4958;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int SLOT_SIZE = 24;
+    private static final int MIN_CAPACITY = 1024;
+    private static final int MAX_CAPACITY = 1 << 26;
+    private static final float MAX_LOAD = 0.7f;
+    private static final long EMPTY = 0;
+    private static final long UNKNOWN_VERSION = 0;
+
+    private final File file;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int size;
+    private int generation;
+
+    public ObjectVersionIndex(File file) throws IOException {
+        this.file = file;
+        if (file.exists() && file.length() >= HEADER_SIZE) {
+            buffer = map(file, file.length());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+                throw new IOException(file + " is not an object version index");
+            }
+            capacity = buffer.getInt(8);
+            size = buffer.getInt(12);
+            generation = buffer.getInt(16);
+        } else {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (file.exists() && !file.delete()) {
+                throw new IOException("Cannot replace " + file);
+            }
+            if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                throw new IOException("Cannot create directory " + parent);
+            }
+            capacity = MIN_CAPACITY;
+            buffer = map(file, fileLength(capacity));
+            writeHeader();
+        }
+        LOG.debug("Opened object version index " + file + " with " + size + " entries");
+    }
+
+    /**
+     * Records the version of an object as seen by the current poll.
+     *
+     * @return <tt>true</tt> if the object is new or its version differs from the last poll
+     */
+    public synchronized boolean update(String objectId, long version) throws IOException {
+        long key = hash(objectId);
+        int slot = findSlot(key);
+        if (buffer.getLong(offset(slot)) == key) {
+            long previous = buffer.getLong(offset(slot) + 8);
+            buffer.putLong(offset(slot) + 8, version);
+            buffer.putInt(offset(slot) + 16, generation);
+            return previous == UNKNOWN_VERSION || previous != version;
+        }
+
+        if (size + 1 > capacity * MAX_LOAD) {
+            rebuild(capacity * 2, Integer.MIN_VALUE);
+            slot = findSlot(key);
+        }
+        putSlot(buffer, slot, key, version, generation);
+        size++;
+        return true;
+    }
+
+    /**
+     * Marks an object as seen by the current poll without recording a new version, which is only
+     * done with {@link #update(String, long)} once the object has been processed.
+     *
+     * @return <tt>true</tt> if the index holds the given version of the object
+     */
+    public synchronized boolean isCurrent(String objectId, long version) {
+        long key = hash(objectId);
+        int slot = findSlot(key);
+        if (buffer.getLong(offset(slot)) != key) {
+            return false;
+        }
+        buffer.putInt(offset(slot) + 16, generation);
+        long current = buffer.getLong(offset(slot) + 8);
+        return current != UNKNOWN_VERSION && current == version;
+    }
+
+    /**
+     * Forgets the version of an object, so it is regarded as changed by the next poll.
+     */
+    public synchronized void invalidate(String objectId) {
+        long key = hash(objectId);
+        int slot = findSlot(key);
+        if (buffer.getLong(offset(slot)) == key) {
+            buffer.putLong(offset(slot) + 8, UNKNOWN_VERSION);
+        }
+    }
+
+    /**
+     * Ends the current poll and writes the index to disk.
+     */
+    public synchronized void nextGeneration() {
+        generation++;
+        writeHeader();
+        buffer.force();
+    }
+
+    /**
+     * Removes the entries not seen during the last <tt>retainedGenerations</tt> polls.
+     */
+    public synchronized void compact(int retainedGenerations) throws IOException {
+        int oldest = generation - retainedGenerations;
+        int live = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            if (buffer.getLong(offset(slot)) != EMPTY && buffer.getInt(offset(slot) + 16) >= oldest) {
+                live++;
+            }
+        }
+        if (live == size) {
+            return;
+        }
+        int newCapacity = MIN_CAPACITY;
+        while (newCapacity < MAX_CAPACITY && live > newCapacity / 2) {
+            newCapacity *= 2;
+        }
+        LOG.debug("Compacting object version index " + file + " from " + size + " to " + live + " entries");
+        rebuild(newCapacity, oldest);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized int getGeneration() {
+        return generation;
+    }
+
+    public synchronized void close() {
+        writeHeader();
+        buffer.force();
+    }
+
+    /**
+     * Hashes a change token, or any other string identifying a version, into a version of this index.
+     */
+    public static long versionOf(String versionString) {
+        return hash(versionString);
+    }
+
+    /**
+     * Turns a last modification time into a version of this index.
+     */
+    public static long versionOf(long timeInMillis) {
+        long version = timeInMillis * 0x9E3779B97F4A7C15L;
+        return version != UNKNOWN_VERSION ? version : 1;
+    }
+
+    private int findSlot(long key) {
+        int mask = capacity - 1;
+        int slot = (int) (key ^ (key >>> 32)) & mask;
+        while (true) {
+            long slotKey = buffer.getLong(offset(slot));
+            if (slotKey == EMPTY || slotKey == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Copies the entries seen since the given generation into a new table, written next to the index
+     * and then renamed over it like the checkpoint files.
+     */
+    private void rebuild(int newCapacity, int oldestGeneration) throws IOException {
+        if (newCapacity > MAX_CAPACITY) {
+            throw new IOException("Object version index " + file + " is full with " + size + " entries");
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        if (tmp.exists() && !tmp.delete()) {
+            throw new IOException("Cannot replace " + tmp);
+        }
+        MappedByteBuffer newBuffer = map(tmp, fileLength(newCapacity));
+        int mask = newCapacity - 1;
+        int newSize = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            long key = buffer.getLong(offset(slot));
+            int slotGeneration = buffer.getInt(offset(slot) + 16);
+            if (key == EMPTY || slotGeneration < oldestGeneration) {
+                continue;
+            }
+            int newSlot = (int) (key ^ (key >>> 32)) & mask;
+            while (newBuffer.getLong(offset(newSlot)) != EMPTY) {
+                newSlot = (newSlot + 1) & mask;
+            }
+            putSlot(newBuffer, newSlot, key, buffer.getLong(offset(slot) + 8), slotGeneration);
+            newSize++;
+        }
+        newBuffer.force();
+
+        if (!tmp.renameTo(file)) {
+            // some platforms cannot rename over an existing file
+            if (!file.delete() || !tmp.renameTo(file)) {
+                throw new IOException("Cannot write object version index " + file);
+            }
+        }
+        buffer = newBuffer;
+        capacity = newCapacity;
+        size = newSize;
+        writeHeader();
+    }
+
+    private void writeHeader() {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, FORMAT_VERSION);
+        buffer.putInt(8, capacity);
+        buffer.putInt(12, size);
+        buffer.putInt(16, generation);
+    }
+
+    private static void putSlot(MappedByteBuffer buffer, int slot, long key, long version, int generation) {
+        buffer.putLong(offset(slot), key);
+        buffer.putLong(offset(slot) + 8, version);
+        buffer.putInt(offset(slot) + 16, generation);
+    }
+
+    private static int offset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private static long fileLength(int capacity) {
+        return HEADER_SIZE + (long) capacity * SLOT_SIZE;
+    }
+
+    private static MappedByteBuffer map(File file, long length) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(length);
+            // the mapping stays valid after the channel is closed
+            return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * 64 bit FNV-1a hash, never 0 as that marks empty slots and unknown versions.
+     */
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash != EMPTY ? hash : 1;
+    }
+}
@@ -0,0 +1,187 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel;
+
+import org.apache.chemistry.opencmis.client.api.ItemIterable;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Iterates over all the pages of an {@link ItemIterable}. With a prefetch depth greater than 0 the
+ * following pages are fetched on the given executor while the current one is consumed, assuming
+ * every page but the last is full; should the repository return a shorter page, the prefetched
+ * ones are dropped and fetched again from the right offset. An iterator which is not used up must
+ * be closed, or the pages fetched ahead keep the executor busy.
+ */
+public class PagingIterator<T> implements Iterator<T>, Closeable {
+    private static final transient Log LOG = LogFactory.getLog(PagingIterator.class);
+
+    private final ItemIterable<T> itemIterable;
+    private final int pageSize;
+    private final int prefetchDepth;
+    private final ExecutorService executorService;
+    private final LinkedList<Future<Page<T>>> prefetchedPages = new LinkedList<Future<Page<T>>>();
+    private Iterator<T> currentPage;
+    private boolean hasMoreItems = true;
+    private int nextOffset;
+    private int prefetchOffset;
+    private int pageNumber;
+    private CMISMetrics metrics;
+    private String operation;
+
+    public PagingIterator(ItemIterable<T> itemIterable, int pageSize) {
+        this(itemIterable, pageSize, 0, null);
+    }
+
+    public PagingIterator(ItemIterable<T> itemIterable, int pageSize, int prefetchDepth, ExecutorService executorService) {
+        this.itemIterable = itemIterable;
+        this.pageSize = pageSize;
+        this.prefetchDepth = executorService != null ? prefetchDepth : 0;
+        this.executorService = executorService;
+    }
+
+    /**
+     * Records every page fetched as a call of the given operation.
+     */
+    public void setMetrics(CMISMetrics metrics, String operation) {
+        this.metrics = metrics;
+        this.operation = operation;
+    }
+
+    public boolean hasNext() {
+        while (currentPage == null || !currentPage.hasNext()) {
+            if (!hasMoreItems) {
+                return false;
+            }
+            Page<T> page = takePage();
+            nextOffset += page.items.size();
+            hasMoreItems = page.hasMoreItems && !page.items.isEmpty();
+            currentPage = page.items.iterator();
+            prefetch();
+        }
+        return true;
+    }
+
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return currentPage.next();
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException("Pages are read only");
+    }
+
+    /**
+     * Cancels the pages fetched ahead, when the iteration stops before the end.
+     */
+    public void close() {
+        for (Future<Page<T>> future : prefetchedPages) {
+            future.cancel(true);
+        }
+        prefetchedPages.clear();
+        hasMoreItems = false;
+        currentPage = null;
+    }
+
+    private Page<T> takePage() {
+        Future<Page<T>> future = prefetchedPages.poll();
+        if (future != null) {
+            Page<T> page = await(future);
+            if (page.offset == nextOffset) {
+                return page;
+            }
+            LOG.debug("Page " + page.number + " did not start at offset " + nextOffset + ", fetching it again");
+            close();
+            hasMoreItems = true;
+        }
+        prefetchOffset = nextOffset;
+        return fetchPage(nextOffset, pageNumber++);
+    }
+
+    private void prefetch() {
+        if (prefetchedPages.isEmpty()) {
+            prefetchOffset = nextOffset;
+        }
+        while (hasMoreItems && prefetchedPages.size() < prefetchDepth) {
+            final int offset = prefetchOffset;
+            final int number = pageNumber++;
+            prefetchedPages.add(executorService.submit(new Callable<Page<T>>() {
+                public Page<T> call() throws Exception {
+                    return fetchPage(offset, number);
+                }
+            }));
+            prefetchOffset += pageSize;
+        }
+    }
+
+    private Page<T> fetchPage(int offset, int number) {
+        LOG.debug("Fetching page " + number);
+        long started = System.nanoTime();
+        ItemIterable<T> page = itemIterable.skipTo(offset).getPage();
+        List<T> items = new ArrayList<T>(pageSize);
+        for (T item : page) {
+            items.add(item);
+        }
+        if (metrics != null) {
+            metrics.recordPage(operation, started);
+        }
+        return new Page<T>(offset, number, items, page.getHasMoreItems());
+    }
+
+    private Page<T> await(Future<Page<T>> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            close();
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeCamelException(e.getCause());
+        } catch (InterruptedException e) {
+            close();
+            Thread.currentThread().interrupt();
+            throw new RuntimeCamelException("Interrupted while fetching a page", e);
+        }
+    }
+
+    private static final class Page<T> {
+        private final int offset;
+        private final int number;
+        private final List<T> items;
+        private final boolean hasMoreItems;
+
+        private Page(int offset, int number, List<T> items, boolean hasMoreItems) {
+            this.offset = offset;
+            this.number = number;
+            this.items = items;
+            this.hasMoreItems = hasMoreItems;
+        }
+    }
+}
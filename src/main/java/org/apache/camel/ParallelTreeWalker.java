@@ -0,0 +1,191 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel;
+
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * Walks the folder tree listing the children of sibling folders concurrently on a bounded pool.
+ * <p/>
+ * In ordered mode the nodes are sent in the same root to leaves order as {@link RecursiveTreeWalker},
+ * while the children of the folders which come next are already being listed in the background.
+ * In unordered mode each folder is sent as soon as its parent listing arrives, which keeps all the
+ * threads of the pool busy.
+ * <p/>
+ * In both modes at most <tt>lookAhead</tt> listings are started ahead of the folder being sent, so
+ * wide trees are not held in memory at once.
+ */
+public class ParallelTreeWalker extends TreeWalker {
+    private static final transient Log LOG = LogFactory.getLog(ParallelTreeWalker.class);
+
+    private final ExecutorService executorService;
+    private final boolean ordered;
+    private final int lookAhead;
+    private final Set<Future<FolderListing>> pending = new HashSet<Future<FolderListing>>();
+
+    public ParallelTreeWalker(CMISConsumer cmisConsumer, boolean readContent, int readCount, OperationContext operationContext,
+                              ExecutorService executorService, boolean ordered, int lookAhead) {
+        super(cmisConsumer, readContent, readCount, operationContext);
+        this.executorService = executorService;
+        this.ordered = ordered;
+        this.lookAhead = Math.max(1, lookAhead);
+    }
+
+    int walk(Folder rootFolder) throws Exception {
+        try {
+            if (ordered) {
+                processFolderNode(rootFolder);
+                walkOrdered(listChildrenAsync(rootFolder));
+            } else {
+                walkUnordered(rootFolder);
+            }
+        } finally {
+            for (Future<FolderListing> future : pending) {
+                future.cancel(true);
+            }
+            pending.clear();
+        }
+        return getTotalPolled();
+    }
+
+    private void walkOrdered(Future<FolderListing> listingFuture) throws Exception {
+        FolderListing listing = await(listingFuture);
+
+        List<Folder> subfolders = new ArrayList<Folder>();
+        for (CmisObject child : listing.children) {
+            if (CMISHelper.isFolder(child)) {
+                subfolders.add((Folder) child);
+            }
+        }
+        // start listing the first subfolders before descending into the first one
+        List<Future<FolderListing>> subfolderListings = new ArrayList<Future<FolderListing>>(subfolders.size());
+        listAhead(subfolders, subfolderListings);
+
+        int subfolderIndex = 0;
+        for (CmisObject child : listing.children) {
+            if (isReadCountReached()) {
+                return;
+            }
+            if (CMISHelper.isFolder(child)) {
+                processFolderNode((Folder) child);
+                if (subfolderIndex == subfolderListings.size()) {
+                    // the window was used up by listings deeper in the tree
+                    subfolderListings.add(listChildrenAsync((Folder) child));
+                }
+                // the listing is not kept once its subtree has been walked
+                walkOrdered(subfolderListings.set(subfolderIndex++, null));
+                listAhead(subfolders, subfolderListings);
+            } else {
+                processNonFolderNode(child, listing.folder);
+            }
+        }
+    }
+
+    /**
+     * Starts listing the next subfolders of a folder, as long as fewer than <tt>lookAhead</tt> listings
+     * are waiting to be sent.
+     */
+    private void listAhead(List<Folder> subfolders, List<Future<FolderListing>> subfolderListings) {
+        while (subfolderListings.size() < subfolders.size() && pending.size() < lookAhead) {
+            subfolderListings.add(listChildrenAsync(subfolders.get(subfolderListings.size())));
+        }
+    }
+
+    private void walkUnordered(Folder rootFolder) throws Exception {
+        CompletionService<FolderListing> completionService = new ExecutorCompletionService<FolderListing>(executorService);
+        processFolderNode(rootFolder);
+        // folders already sent whose children are listed once fewer than lookAhead listings are outstanding
+        LinkedList<Folder> unlisted = new LinkedList<Folder>();
+        unlisted.add(rootFolder);
+
+        int outstanding = 0;
+        while ((outstanding > 0 || !unlisted.isEmpty()) && !isReadCountReached()) {
+            while (outstanding < lookAhead && !unlisted.isEmpty()) {
+                pending.add(completionService.submit(new ListChildrenTask(unlisted.removeFirst())));
+                outstanding++;
+            }
+            FolderListing listing = await(completionService.take());
+            outstanding--;
+            for (CmisObject child : listing.children) {
+                if (isReadCountReached()) {
+                    break;
+                }
+                if (CMISHelper.isFolder(child)) {
+                    processFolderNode((Folder) child);
+                    unlisted.add((Folder) child);
+                } else {
+                    processNonFolderNode(child, listing.folder);
+                }
+            }
+        }
+    }
+
+    private Future<FolderListing> listChildrenAsync(Folder folder) {
+        Future<FolderListing> future = executorService.submit(new ListChildrenTask(folder));
+        pending.add(future);
+        return future;
+    }
+
+    private FolderListing await(Future<FolderListing> future) throws Exception {
+        pending.remove(future);
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
+    private static final class FolderListing {
+        private final Folder folder;
+        private final List<CmisObject> children;
+
+        private FolderListing(Folder folder, List<CmisObject> children) {
+            this.folder = folder;
+            this.children = children;
+        }
+    }
+
+    private final class ListChildrenTask implements Callable<FolderListing> {
+        private final Folder folder;
+
+        private ListChildrenTask(Folder folder) {
+            this.folder = folder;
+        }
+
+        public FolderListing call() throws Exception {
+            LOG.debug("Listing children of " + folder.getPath());
+            List<CmisObject> children = new ArrayList<CmisObject>();
+            PagingIterator<CmisObject> pages = listChildren(folder, 0, null);
+            while (!Thread.currentThread().isInterrupted() && pages.hasNext()) {
+                children.add(pages.next());
+            }
+            return new FolderListing(folder, children);
+        }
+    }
+}
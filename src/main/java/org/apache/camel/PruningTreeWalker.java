@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel;
+
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.FileableCmisObject;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.chemistry.opencmis.client.api.Tree;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Walks the folder tree fetching only its folders with <tt>getFolderTree</tt> requests, and lists the
+ * children of a folder only when the folder has changed since the previous poll. The folder tree is
+ * fetched {@link #FOLDER_TREE_DEPTH} levels at a time, so the folders held in memory are bounded by
+ * the width of the tree rather than its size. The versions of the folders, and the versions they had
+ * when their children were last listed, under a key of their own, are kept in a folder index apart
+ * from the documents: every poll sees every folder, so the folder index can be compacted, while the
+ * documents of the folders not listed are not seen.
+ * <p/>
+ * This only finds all changes in repositories which update the change token or the last modification
+ * date of a folder whenever one of its children is created, changed or removed. Only usable when the
+ * repository advertises <tt>capabilityGetFolderTree</tt>.
+ */
+public class PruningTreeWalker extends TreeWalker {
+    private static final transient Log LOG = LogFactory.getLog(PruningTreeWalker.class);
+    private static final String CHILDREN_KEY_PREFIX = "children:";
+    static final int FOLDER_TREE_DEPTH = 4;
+    private ObjectVersionIndex folderIndex;
+
+    public PruningTreeWalker(CMISConsumer cmisConsumer, boolean readContent, int readCount, OperationContext operationContext) {
+        super(cmisConsumer, readContent, readCount, operationContext);
+    }
+
+    /**
+     * Keeps the versions of the folders in the given index instead of the one of the documents.
+     */
+    void setFolderIndex(ObjectVersionIndex folderIndex) {
+        this.folderIndex = folderIndex;
+    }
+
+    int walk(Folder rootFolder) throws Exception {
+        processFolderNode(rootFolder);
+        processFolderTree(rootFolder, getFolderTree(rootFolder), 1);
+        return getTotalPolled();
+    }
+
+    private List<Tree<FileableCmisObject>> getFolderTree(Folder folder) {
+        LOG.debug("Fetching folder tree of " + folder.getPath());
+        long started = System.nanoTime();
+        List<Tree<FileableCmisObject>> folderTree = folder.getFolderTree(FOLDER_TREE_DEPTH, operationContext);
+        metrics.recordPage(CMISMetrics.GET_FOLDER_TREE, started);
+        return folderTree;
+    }
+
+    /**
+     * @param depth the level of the subfolders in the folder tree they were fetched with
+     */
+    private void processFolderTree(Folder folder, List<Tree<FileableCmisObject>> subfolders, int depth) throws Exception {
+        if (isReadCountReached()) {
+            return;
+        }
+        if (childrenMayHaveChanged(folder)) {
+            processDocuments(folder);
+        }
+        if (subfolders == null) {
+            return;
+        }
+        for (Tree<FileableCmisObject> subfolder : subfolders) {
+            if (isReadCountReached()) {
+                return;
+            }
+            Folder childFolder = (Folder) subfolder.getItem();
+            processFolderNode(childFolder);
+            if (depth < FOLDER_TREE_DEPTH) {
+                processFolderTree(childFolder, subfolder.getChildren(), depth + 1);
+            } else {
+                // the deepest level of a folder tree comes without subfolders, which are fetched with a tree of their own
+                processFolderTree(childFolder, getFolderTree(childFolder), 1);
+            }
+        }
+    }
+
+    private void processDocuments(Folder folder) throws Exception {
+        LOG.debug("Listing changed folder " + folder.getPath());
+        boolean listed = false;
+        PagingIterator<CmisObject> children = listChildren(folder, 0, null);
+        try {
+            while (!isReadCountReached() && children.hasNext()) {
+                CmisObject child = children.next();
+                // subfolders come with the folder tree
+                if (!CMISHelper.isFolder(child)) {
+                    processNonFolderNode(child, folder);
+                }
+            }
+            listed = !children.hasNext();
+        } finally {
+            children.close();
+            if (!listed) {
+                // list the folder again with the next poll
+                getFolderIndex().invalidate(CHILDREN_KEY_PREFIX + folder.getId());
+            }
+        }
+    }
+
+    @Override
+    protected void nodeFailed(CmisObject cmisObject, Folder parentFolder) {
+        if (parentFolder != null) {
+            // list the folder again with the next poll, or the failed document would not be seen
+            getFolderIndex().invalidate(CHILDREN_KEY_PREFIX + parentFolder.getId());
+        }
+    }
+
+    @Override
+    protected ObjectVersionIndex getVersionIndex(CmisObject cmisObject) {
+        return CMISHelper.isFolder(cmisObject) ? getFolderIndex() : getVersionIndex();
+    }
+
+    private ObjectVersionIndex getFolderIndex() {
+        return folderIndex != null ? folderIndex : getVersionIndex();
+    }
+
+    private boolean childrenMayHaveChanged(Folder folder) throws IOException {
+        long version = versionOf(folder);
+        return version == 0 || getFolderIndex().update(CHILDREN_KEY_PREFIX + folder.getId(), version);
+    }
+}
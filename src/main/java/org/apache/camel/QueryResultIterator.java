@@ -0,0 +1,162 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel;
+
+import org.apache.chemistry.opencmis.client.api.QueryResult;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the rows of a query, fetching the next page only when the previous one has been
+ * consumed, or ahead of time with a prefetch depth. When content is retrieved, the content stream
+ * of a row is opened only once the row is reached. Rows of other shards are skipped before their
+ * content is opened. An iterator which is not used up must be closed, so the pages fetched ahead are
+ * cancelled.
+ */
+public class QueryResultIterator implements Iterator<Map<String, Object>>, Closeable {
+    private final CMISSessionFacade sessionFacade;
+    private final boolean retrieveContent;
+    private final int readSize;
+    private final PagingIterator<QueryResult> rows;
+    private int shardCount = 1;
+    private int shardIndex;
+    private CMISMetrics metrics;
+    private Session session;
+    private long contentOffset;
+    private long contentLength = -1;
+    private boolean headerMaps;
+    private QueryResult nextRow;
+    private int count;
+
+    public QueryResultIterator(CMISSessionFacade sessionFacade, boolean retrieveContent, int readSize,
+                               PagingIterator<QueryResult> rows) {
+        this.sessionFacade = sessionFacade;
+        this.retrieveContent = retrieveContent;
+        this.readSize = readSize;
+        this.rows = rows;
+    }
+
+    public boolean hasNext() {
+        if (readSize > 0 && count >= readSize) {
+            rows.close();
+            return false;
+        }
+        while (nextRow == null && rows.hasNext()) {
+            QueryResult row = rows.next();
+            if (isInShard(row)) {
+                nextRow = row;
+            }
+        }
+        return nextRow != null;
+    }
+
+    public Map<String, Object> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        QueryResult item = nextRow;
+        nextRow = null;
+        count++;
+        if (metrics != null) {
+            metrics.objectEmitted();
+        }
+        boolean pinned = session != null && sessionFacade.pinSession(session);
+        try {
+            Map<String, Object> properties = headerMaps ? sessionFacade.headersOf(item) : sessionFacade.propertiesOf(item);
+            if (retrieveContent) {
+                InputStream inputStream = sessionFacade.getContentStreamFor(item, contentOffset, contentLength);
+                properties.put(CamelCMISConstants.CAMEL_CMIS_CONTENT_STREAM, inputStream);
+            }
+            return properties;
+        } finally {
+            if (pinned) {
+                sessionFacade.releaseSession();
+            }
+        }
+    }
+
+    /**
+     * Only returns the rows whose object id belongs to the given shard.
+     */
+    public void setShard(int shardCount, int shardIndex) {
+        this.shardCount = shardCount;
+        this.shardIndex = shardIndex;
+    }
+
+    /**
+     * Reads the types and the content of the rows with the session the query ran with, whichever
+     * thread reads the rows.
+     */
+    public void setSession(Session session) {
+        this.session = session;
+    }
+
+    /**
+     * Reads only the given range of the content of the rows, by default all of it.
+     *
+     * @param contentOffset the byte reading starts at
+     * @param contentLength the number of bytes to read, -1 to read up to the end
+     */
+    public void setContentRange(long contentOffset, long contentLength) {
+        this.contentOffset = contentOffset;
+        this.contentLength = contentLength;
+    }
+
+    /**
+     * Counts every row returned as an object emitted.
+     */
+    public void setMetrics(CMISMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns every row as a header map of a consumer exchange instead of a plain map.
+     */
+    public void setHeaderMaps(boolean headerMaps) {
+        this.headerMaps = headerMaps;
+    }
+
+    private boolean isInShard(QueryResult row) {
+        if (shardCount <= 1) {
+            return true;
+        }
+        String objectId = row.getPropertyValueById(PropertyIds.OBJECT_ID);
+        if (objectId == null) {
+            // every shard would deliver it
+            throw new RuntimeCamelException("Sharded queries must select " + PropertyIds.OBJECT_ID);
+        }
+        return CMISHelper.shardOf(objectId, shardCount) == shardIndex;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException("Query results are read only");
+    }
+
+    /**
+     * Cancels the pages fetched ahead, when the rows are not read to the end.
+     */
+    public void close() {
+        nextRow = null;
+        rows.close();
+    }
+}
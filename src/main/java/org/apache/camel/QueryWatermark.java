@@ -0,0 +1,246 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel;
+
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * The highest <tt>cmis:lastModificationDate</tt> a query consumer has delivered, together with the
+ * ids of the objects delivered with exactly that date. The query is restricted to the objects
+ * modified at or after that date, and the ids tell apart the ones already delivered.
+ * <p/>
+ * Rows with the same date are ordered by <tt>cmis:objectId</tt>, so only the highest id delivered
+ * at the watermark date needs to be kept, and the next query starts right after it. Repositories
+ * which cannot order or compare object ids get the date order only, and then all the ids delivered
+ * at the watermark date are kept, up to {@link #MAX_OBJECT_IDS_AT_TIME}.
+ */
+public class QueryWatermark {
+    /**
+     * The most objects a watermark without object id order tells apart at one modification date.
+     */
+    public static final int MAX_OBJECT_IDS_AT_TIME = 10000;
+
+    private long time = -1;
+    private final Set<String> objectIdsAtTime = new HashSet<String>();
+    private boolean orderedByObjectId = true;
+
+    /**
+     * Reads a watermark written by {@link #toCheckpoint()}, or starts from the beginning when there is none.
+     */
+    public static QueryWatermark fromCheckpoint(String checkpoint) {
+        QueryWatermark watermark = new QueryWatermark();
+        if (checkpoint != null) {
+            String[] lines = checkpoint.split("\n");
+            watermark.time = Long.parseLong(lines[0]);
+            for (int i = 1; i < lines.length; i++) {
+                watermark.objectIdsAtTime.add(lines[i]);
+            }
+        }
+        return watermark;
+    }
+
+    public String toCheckpoint() {
+        StringBuilder checkpoint = new StringBuilder().append(time);
+        for (String objectId : objectIdsAtTime) {
+            checkpoint.append('\n').append(objectId);
+        }
+        return checkpoint.toString();
+    }
+
+    /**
+     * Whether the rows with the same modification date are ordered, and told apart, by their object
+     * id; <tt>true</tt> by default.
+     */
+    public void setOrderedByObjectId(boolean orderedByObjectId) {
+        this.orderedByObjectId = orderedByObjectId;
+    }
+
+    public boolean isOrderedByObjectId() {
+        return orderedByObjectId;
+    }
+
+    /**
+     * Adds the watermark predicate and the ordering by modification date to the query.
+     *
+     * @throws IllegalArgumentException if the query has an ORDER BY clause of its own
+     */
+    public String applyTo(String query) {
+        int[] end = new int[1];
+        if (indexOfKeywords(query, end, "ORDER", "BY") >= 0) {
+            throw new IllegalArgumentException("Watermark queries are ordered by " + PropertyIds.LAST_MODIFICATION_DATE
+                    + " and cannot have an ORDER BY clause: " + query);
+        }
+        String result = query.trim();
+        String predicate = predicate();
+        if (predicate != null) {
+            int where = indexOfKeywords(result, end, "WHERE");
+            if (where >= 0) {
+                result = result.substring(0, where) + "WHERE " + predicate + " AND (" + result.substring(end[0]).trim() + ")";
+            } else {
+                result = result + " WHERE " + predicate;
+            }
+        }
+        result += " ORDER BY " + PropertyIds.LAST_MODIFICATION_DATE + " ASC";
+        if (orderedByObjectId) {
+            result += ", " + PropertyIds.OBJECT_ID + " ASC";
+        }
+        return result;
+    }
+
+    private String predicate() {
+        if (time < 0) {
+            return null;
+        }
+        String timestamp = "TIMESTAMP '" + formatTime() + "'";
+        if (orderedByObjectId && objectIdsAtTime.size() == 1) {
+            // starts right after the last object delivered, however many objects share its date
+            String lastObjectId = objectIdsAtTime.iterator().next();
+            return "(" + PropertyIds.LAST_MODIFICATION_DATE + " > " + timestamp + " OR (" + PropertyIds.LAST_MODIFICATION_DATE
+                    + " = " + timestamp + " AND " + PropertyIds.OBJECT_ID + " > '" + escape(lastObjectId) + "'))";
+        }
+        return PropertyIds.LAST_MODIFICATION_DATE + " >= " + timestamp;
+    }
+
+    public boolean isDelivered(String objectId, GregorianCalendar lastModificationDate) {
+        long modificationTime = lastModificationDate.getTimeInMillis();
+        return modificationTime < time || (modificationTime == time && objectIdsAtTime.contains(objectId));
+    }
+
+    /**
+     * Moves the watermark past a delivered row. Rows must be passed in the order of the query.
+     *
+     * @throws IllegalStateException if more objects than {@link #MAX_OBJECT_IDS_AT_TIME} share the same
+     *                               modification date and the rows are not ordered by object id
+     */
+    public void advance(String objectId, GregorianCalendar lastModificationDate) {
+        long modificationTime = lastModificationDate.getTimeInMillis();
+        if (modificationTime > time) {
+            time = modificationTime;
+            objectIdsAtTime.clear();
+        }
+        if (modificationTime == time) {
+            if (orderedByObjectId) {
+                // the rows before it at the same date have lower ids
+                objectIdsAtTime.clear();
+            } else if (objectIdsAtTime.size() >= MAX_OBJECT_IDS_AT_TIME) {
+                throw new IllegalStateException("More than " + MAX_OBJECT_IDS_AT_TIME + " objects were modified at "
+                        + formatTime() + ", which a watermark without object id order cannot tell apart");
+            }
+            objectIdsAtTime.add(objectId);
+        }
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    int getObjectIdsAtTimeCount() {
+        return objectIdsAtTime.size();
+    }
+
+    private String formatTime() {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.ENGLISH);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(time));
+    }
+
+    /**
+     * Escapes a value for a CMIS QL string literal.
+     */
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("'", "\\'");
+    }
+
+    /**
+     * Finds a clause keyword, or a sequence of them separated by any whitespace, outside of string
+     * literals and parentheses, so text such as <tt>CONTAINS('a where b')</tt> is not taken for one.
+     *
+     * @param end receives the position right after the last keyword
+     * @return the position of the first keyword, or -1
+     */
+    static int indexOfKeywords(String query, int[] end, String... keywords) {
+        int depth = 0;
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (c == '\'') {
+                i = endOfLiteral(query, i);
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (depth == 0 && (i == 0 || !isWordChar(query.charAt(i - 1)))) {
+                int matched = matchKeywords(query, i, keywords);
+                if (matched >= 0) {
+                    end[0] = matched;
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static int matchKeywords(String query, int start, String... keywords) {
+        int position = start;
+        for (int k = 0; k < keywords.length; k++) {
+            if (k > 0) {
+                int words = position;
+                while (position < query.length() && Character.isWhitespace(query.charAt(position))) {
+                    position++;
+                }
+                if (position == words) {
+                    return -1;
+                }
+            }
+            if (!query.regionMatches(true, position, keywords[k], 0, keywords[k].length())) {
+                return -1;
+            }
+            position += keywords[k].length();
+        }
+        return position == query.length() || !isWordChar(query.charAt(position)) ? position : -1;
+    }
+
+    /**
+     * @return the position of the quote closing the literal opened at the given position
+     */
+    private static int endOfLiteral(String query, int start) {
+        for (int i = start + 1; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '\'') {
+                if (i + 1 < query.length() && query.charAt(i + 1) == '\'') {
+                    i++;
+                } else {
+                    return i;
+                }
+            }
+        }
+        return query.length();
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == ':' || c == '.';
+    }
+}
@@ -1,84 +1,50 @@
 package org.apache.camel;
 
 import org.apache.chemistry.opencmis.client.api.*;
-import org.apache.chemistry.opencmis.client.runtime.OperationContextImpl;
-import org.apache.chemistry.opencmis.commons.data.ContentStream;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import java.io.InputStream;
-import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
-public class RecursiveTreeWalker {
+public class RecursiveTreeWalker extends TreeWalker {
     private static final transient Log LOG = LogFactory.getLog(RecursiveTreeWalker.class);
 
-    private final CMISConsumer cmisConsumer;
-    private final boolean readContent;
-    private final int readCount;
-    private final int pageSize;
-    private int totalPolled;
+    private final int prefetchDepth;
+    private final ExecutorService prefetchExecutorService;
 
-    public RecursiveTreeWalker(CMISConsumer cmisConsumer, boolean readContent, int readCount, int pageSize) {
-        this.cmisConsumer = cmisConsumer;
-        this.readContent = readContent;
-        this.readCount = readCount;
-        this.pageSize = pageSize;
+    public RecursiveTreeWalker(CMISConsumer cmisConsumer, boolean readContent, int readCount, OperationContext operationContext) {
+        this(cmisConsumer, readContent, readCount, operationContext, 0, null);
+    }
+
+    public RecursiveTreeWalker(CMISConsumer cmisConsumer, boolean readContent, int readCount, OperationContext operationContext,
+                               int prefetchDepth, ExecutorService prefetchExecutorService) {
+        super(cmisConsumer, readContent, readCount, operationContext);
+        this.prefetchDepth = prefetchDepth;
+        this.prefetchExecutorService = prefetchExecutorService;
+    }
+
+    int walk(Folder rootFolder) throws Exception {
+        return processFolderRecursively(rootFolder);
     }
 
     int processFolderRecursively(Folder folder) throws Exception {
         processFolderNode(folder);
 
-        OperationContext operationContext = new OperationContextImpl();
-        operationContext.setMaxItemsPerPage(pageSize);
-
-        int count = 0;
-        int pageNumber = 0;
-        boolean finished = false;
-        ItemIterable<CmisObject> itemIterable = folder.getChildren(operationContext);
-        while (!finished) {
-            ItemIterable<CmisObject> currentPage = itemIterable.skipTo(count).getPage();
-            LOG.debug("Processing page " + pageNumber);
-            for (CmisObject child : currentPage) {
+        LOG.debug("Processing children of " + folder.getName());
+        PagingIterator<CmisObject> children = listChildren(folder, prefetchDepth, prefetchExecutorService);
+        try {
+            while (!isReadCountReached() && children.hasNext()) {
+                CmisObject child = children.next();
                 if (CMISHelper.isFolder(child)) {
-                    Folder childFolder = (Folder) child;
-                    processFolderRecursively(childFolder);
+                    processFolderRecursively((Folder) child);
                 } else {
                     processNonFolderNode(child, folder);
                 }
-
-                count++;
-                if (totalPolled == readCount) {
-                    finished = true;
-                    break;
-                }
-            }
-            pageNumber++;
-            if (!currentPage.getHasMoreItems()) {
-                finished = true;
             }
+        } finally {
+            children.close();
         }
 
-        return totalPolled;
-    }
-
-    private void processNonFolderNode(CmisObject cmisObject, Folder parentFolder) throws Exception {
-        InputStream inputStream = null;
-        Map<String, Object> properties = CMISHelper.objectProperties(cmisObject);
-        properties.put(CamelCMISConstants.CMIS_FOLDER_PATH, parentFolder.getPath());
-        if (CMISHelper.isDocument(cmisObject) && readContent) {
-            ContentStream contentStream = ((Document) cmisObject).getContentStream();
-            if (contentStream != null) {
-                inputStream = contentStream.getStream();
-            }
-        }
-        sendNode(properties, inputStream);
-    }
-
-    private void processFolderNode(Folder folder) throws Exception {
-        sendNode(CMISHelper.objectProperties(folder), null);
-    }
-
-    private void sendNode(Map<String, Object> properties, InputStream inputStream) throws Exception {
-        totalPolled += cmisConsumer.sendExchangeWithPropsAndBody(properties, inputStream);
+        return getTotalPolled();
     }
 }
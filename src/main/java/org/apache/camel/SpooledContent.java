@@ -0,0 +1,128 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel;
+
+import org.apache.camel.util.IOHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Content spooled to a file, which can be read again from the start any number of times. The file
+ * is read through a channel and copied to output streams with {@link FileChannel#transferTo}.
+ */
+public class SpooledContent extends InputStream implements StreamCache {
+    private final File file;
+    private final long length;
+    private FileChannel channel;
+    private InputStream stream;
+
+    public SpooledContent(File file, long length) {
+        this.file = file;
+        this.length = length;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return open().read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        return open().read(b, off, len);
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        open();
+        long skipped = Math.max(Math.min(n, length - channel.position()), 0);
+        channel.position(channel.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        open();
+        return (int) Math.min(length - channel.position(), Integer.MAX_VALUE);
+    }
+
+    public void reset() {
+        if (channel != null) {
+            try {
+                channel.position(0);
+            } catch (IOException e) {
+                throw new RuntimeCamelException("Cannot rewind " + file, e);
+            }
+        }
+    }
+
+    public void writeTo(OutputStream os) throws IOException {
+        open();
+        WritableByteChannel target = Channels.newChannel(os);
+        long position = 0;
+        while (position < length) {
+            position += channel.transferTo(position, length - position, target);
+        }
+        channel.position(length);
+    }
+
+    @Override
+    public void close() {
+        if (channel != null) {
+            IOHelper.close(channel);
+            channel = null;
+            stream = null;
+        }
+    }
+
+    /**
+     * Closes the content and deletes its file.
+     */
+    public void delete() {
+        close();
+        if (!file.delete() && file.exists()) {
+            file.deleteOnExit();
+        }
+    }
+
+    private InputStream open() throws IOException {
+        if (channel == null) {
+            channel = new RandomAccessFile(file, "r").getChannel();
+            stream = Channels.newInputStream(channel);
+        }
+        return stream;
+    }
+
+    @Override
+    public String toString() {
+        return "SpooledContent[" + file + ", " + length + " bytes]";
+    }
+}
@@ -0,0 +1,171 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel;
+
+import org.apache.camel.impl.SynchronizationAdapter;
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.Document;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.GregorianCalendar;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Base class for the strategies walking the folder tree of a repository. Nodes are always
+ * sent to the consumer from the polling thread, so <tt>readCount</tt> is honoured exactly.
+ */
+public abstract class TreeWalker {
+    protected final CMISConsumer cmisConsumer;
+    protected final boolean readContent;
+    protected final int readCount;
+    protected final OperationContext operationContext;
+    protected final CMISMetrics metrics;
+    protected final CMISSessionFacade sessionFacade;
+    private int totalPolled;
+    private ObjectVersionIndex versionIndex;
+
+    protected TreeWalker(CMISConsumer cmisConsumer, boolean readContent, int readCount, OperationContext operationContext) {
+        this.cmisConsumer = cmisConsumer;
+        this.readContent = readContent;
+        this.readCount = readCount;
+        this.operationContext = operationContext;
+        this.metrics = cmisConsumer.getMetrics();
+        this.sessionFacade = cmisConsumer.getSessionFacade();
+    }
+
+    /**
+     * Sends the given folder and all its descendants to the consumer.
+     *
+     * @return the number of nodes sent
+     */
+    abstract int walk(Folder rootFolder) throws Exception;
+
+    protected boolean isReadCountReached() {
+        return readCount > 0 && totalPolled >= readCount;
+    }
+
+    protected int getTotalPolled() {
+        return totalPolled;
+    }
+
+    /**
+     * Skips the nodes whose version is the same as in the given index, and records the versions of the others.
+     */
+    void setVersionIndex(ObjectVersionIndex versionIndex) {
+        this.versionIndex = versionIndex;
+    }
+
+    protected ObjectVersionIndex getVersionIndex() {
+        return versionIndex;
+    }
+
+    /**
+     * @return the index holding the version of the given node
+     */
+    protected ObjectVersionIndex getVersionIndex(CmisObject cmisObject) {
+        return versionIndex;
+    }
+
+    /**
+     * @return the children of the folder, fetched page by page
+     */
+    protected PagingIterator<CmisObject> listChildren(Folder folder, int prefetchDepth, ExecutorService prefetchExecutorService) {
+        PagingIterator<CmisObject> children = new PagingIterator<CmisObject>(folder.getChildren(operationContext),
+                operationContext.getMaxItemsPerPage(), prefetchDepth, prefetchExecutorService);
+        children.setMetrics(metrics, CMISMetrics.GET_CHILDREN);
+        return children;
+    }
+
+    protected void processNonFolderNode(CmisObject cmisObject, Folder parentFolder) throws Exception {
+        long version = versionOf(cmisObject);
+        if (isUnchanged(cmisObject, version)) {
+            return;
+        }
+        InputStream inputStream = null;
+        Map<String, Object> properties = sessionFacade.propertiesOf(cmisObject);
+        properties.put(CamelCMISConstants.CMIS_FOLDER_PATH, parentFolder.getPath());
+        if (CMISHelper.isDocument(cmisObject) && readContent) {
+            inputStream = sessionFacade.getContentStream((Document) cmisObject);
+        }
+        sendNode(cmisObject, version, parentFolder, properties, inputStream);
+    }
+
+    protected void processFolderNode(Folder folder) throws Exception {
+        long version = versionOf(folder);
+        if (isUnchanged(folder, version)) {
+            return;
+        }
+        sendNode(folder, version, null, sessionFacade.propertiesOf(folder), null);
+    }
+
+    /**
+     * Called when the exchange of a node fails, so it is sent again by the next poll.
+     *
+     * @param parentFolder the folder the node was listed in, <tt>null</tt> for folders
+     */
+    protected void nodeFailed(CmisObject cmisObject, Folder parentFolder) {
+    }
+
+    private void sendNode(final CmisObject cmisObject, final long version, final Folder parentFolder,
+                          Map<String, Object> properties, InputStream inputStream) throws Exception {
+        final ObjectVersionIndex index = getVersionIndex(cmisObject);
+        if (index == null || version == 0) {
+            totalPolled += cmisConsumer.sendExchangeWithPropsAndBody(properties, inputStream);
+            return;
+        }
+        // the version is recorded only once the route is done with the node, which with
+        // maxInflightExchanges can be after this poll has moved on
+        totalPolled += cmisConsumer.sendExchangeWithPropsAndBody(properties, inputStream, new SynchronizationAdapter() {
+            @Override
+            public void onComplete(Exchange exchange) {
+                try {
+                    index.update(cmisObject.getId(), version);
+                } catch (IOException e) {
+                    throw new RuntimeCamelException("Cannot record the version of " + cmisObject.getId(), e);
+                }
+            }
+
+            @Override
+            public void onFailure(Exchange exchange) {
+                nodeFailed(cmisObject, parentFolder);
+            }
+        });
+    }
+
+    /**
+     * Nodes without a change token or last modification date are always sent.
+     */
+    private boolean isUnchanged(CmisObject cmisObject, long version) {
+        ObjectVersionIndex index = getVersionIndex(cmisObject);
+        return index != null && version != 0 && index.isCurrent(cmisObject.getId(), version);
+    }
+
+    /**
+     * @return the version of the object in an {@link ObjectVersionIndex}, or 0 if the repository did not return one
+     */
+    protected static long versionOf(CmisObject cmisObject) {
+        if (cmisObject.getChangeToken() != null) {
+            return ObjectVersionIndex.versionOf(cmisObject.getChangeToken());
+        }
+        GregorianCalendar lastModificationDate = cmisObject.getLastModificationDate();
+        return lastModificationDate != null ? ObjectVersionIndex.versionOf(lastModificationDate.getTimeInMillis()) : 0;
+    }
+}
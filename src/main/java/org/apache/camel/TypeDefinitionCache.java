@@ -0,0 +1,97 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel;
+
+import org.apache.chemistry.opencmis.client.api.DocumentType;
+import org.apache.chemistry.opencmis.client.api.ObjectType;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.enums.BaseTypeId;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisObjectNotFoundException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the definitions of the object types used by an endpoint, so that versionability and base
+ * type checks do not depend on the client side caches of the session. Definitions are fetched
+ * again once they are older than the refresh interval; an interval of 0 keeps them forever.
+ */
+public class TypeDefinitionCache {
+    private static final transient Log LOG = LogFactory.getLog(TypeDefinitionCache.class);
+
+    private final long refreshInterval;
+    private final ConcurrentMap<String, CachedType> types = new ConcurrentHashMap<String, CachedType>();
+
+    public TypeDefinitionCache(long refreshInterval) {
+        this.refreshInterval = refreshInterval;
+    }
+
+    public void warmUp(Session session, String... typeIds) {
+        for (String typeId : typeIds) {
+            try {
+                getType(session, typeId.trim());
+            } catch (CmisObjectNotFoundException e) {
+                LOG.warn("Object type " + typeId + " is not defined in the repository");
+            }
+        }
+    }
+
+    public ObjectType getType(Session session, String typeId) {
+        CachedType cachedType = types.get(typeId);
+        if (cachedType == null || cachedType.isExpired()) {
+            LOG.debug("Loading definition of type " + typeId);
+            cachedType = new CachedType(session.getTypeDefinition(typeId));
+            types.put(typeId, cachedType);
+        }
+        return cachedType.type;
+    }
+
+    public boolean isVersionable(Session session, String typeId) {
+        ObjectType type = getType(session, typeId);
+        return type instanceof DocumentType && Boolean.TRUE.equals(((DocumentType) type).isVersionable());
+    }
+
+    /**
+     * @return the base type of the given type, or <tt>null</tt> if the repository does not know it
+     */
+    public BaseTypeId getBaseTypeId(Session session, String typeId) {
+        try {
+            return getType(session, typeId).getBaseTypeId();
+        } catch (CmisObjectNotFoundException e) {
+            return null;
+        }
+    }
+
+    public void clear() {
+        types.clear();
+    }
+
+    private final class CachedType {
+        private final ObjectType type;
+        private final long loaded = System.currentTimeMillis();
+
+        private CachedType(ObjectType type) {
+            this.type = type;
+        }
+
+        private boolean isExpired() {
+            return refreshInterval > 0 && System.currentTimeMillis() - loaded > refreshInterval;
+        }
+    }
+}
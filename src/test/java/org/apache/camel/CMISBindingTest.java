@@ -0,0 +1,72 @@
+package org.apache.camel;
+
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.apache.chemistry.opencmis.client.api.Document;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.apache.chemistry.opencmis.commons.SessionParameter;
+import org.apache.chemistry.opencmis.commons.enums.BindingType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+
+/**
+ * Sets up the web services and local bindings; the atompub binding is used by all the other tests.
+ */
+public class CMISBindingTest extends Assert {
+
+    @Test
+    public void webServicesUrlsAreDerivedFromTheEndpointUrl() throws Exception {
+        CMISSessionFacade sessionFacade = new CMISSessionFacade("http://localhost:8080/opencmis/services");
+        sessionFacade.setBindingType("webservices");
+        sessionFacade.setLazyStartup(true);
+        sessionFacade.initSession();
+
+        Map<String, String> parameters = sessionFacade.getSessionParameters();
+        assertEquals(BindingType.WEBSERVICES.value(), parameters.get(SessionParameter.BINDING_TYPE));
+        assertEquals("http://localhost:8080/opencmis/services/RepositoryService?wsdl",
+                parameters.get(SessionParameter.WEBSERVICES_REPOSITORY_SERVICE));
+        assertEquals("http://localhost:8080/opencmis/services/ObjectService?wsdl",
+                parameters.get(SessionParameter.WEBSERVICES_OBJECT_SERVICE));
+        assertNull(parameters.get(SessionParameter.ATOMPUB_URL));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void localBindingWithoutFactoryIsRejected() throws Exception {
+        CMISSessionFacade sessionFacade = new CMISSessionFacade("local");
+        sessionFacade.setBindingType("local");
+        sessionFacade.setLazyStartup(true);
+        sessionFacade.initSession();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownBindingIsRejected() throws Exception {
+        CMISSessionFacade sessionFacade = new CMISSessionFacade("local");
+        sessionFacade.setBindingType("corba");
+        sessionFacade.setLazyStartup(true);
+        sessionFacade.initSession();
+    }
+
+    @Test
+    public void localBindingStoresInInMemoryRepository() throws Exception {
+        CMISSessionFacade sessionFacade = new CMISSessionFacade("local");
+        sessionFacade.setBindingType("local");
+        sessionFacade.setLocalFactory(InMemoryServiceFactory.class.getName());
+        sessionFacade.setRepositoryId(InMemoryServiceFactory.REPOSITORY_ID);
+        sessionFacade.initSession();
+        CamelContext context = new DefaultCamelContext();
+        CMISEndpoint endpoint = new CMISEndpoint("cmis://local", new CMISComponent(), sessionFacade);
+        endpoint.setCamelContext(context);
+
+        Exchange exchange = new DefaultExchange(context);
+        exchange.getIn().setBody("Stored through the local binding");
+        exchange.getIn().setHeader(PropertyIds.NAME, "local.txt");
+        exchange.getIn().setHeader(PropertyIds.CONTENT_STREAM_MIME_TYPE, "text/plain; charset=UTF-8");
+        endpoint.createProducer().process(exchange);
+
+        Document document = (Document) sessionFacade.getSession().getObject(exchange.getOut().getBody(String.class));
+        assertEquals("local.txt", document.getName());
+        assertEquals(InMemoryServiceFactory.REPOSITORY_ID, sessionFacade.getSession().getRepositoryInfo().getId());
+    }
+}
@@ -0,0 +1,189 @@
+package org.apache.camel;
+
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.spi.ExceptionHandler;
+import org.apache.chemistry.opencmis.client.api.ChangeEvent;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.client.runtime.ChangeEventImpl;
+import org.apache.chemistry.opencmis.client.runtime.ChangeEventsImpl;
+import org.apache.chemistry.opencmis.commons.enums.CapabilityChanges;
+import org.apache.chemistry.opencmis.commons.enums.ChangeType;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.RepositoryCapabilitiesImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.RepositoryInfoImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+/**
+ * Runs the change log consumer against a change log kept in memory, as the in memory
+ * repository used by the other tests does not record changes.
+ */
+public class CMISChangeLogConsumerTest extends Assert {
+    private final List<ChangeEvent> changeLog = new ArrayList<ChangeEvent>();
+    private final List<String> delivered = new ArrayList<String>();
+    private String failOnce;
+    private boolean tokenHandedBack;
+
+    @Test
+    public void restartedConsumerResumesFromSavedToken() throws Exception {
+        File checkpoint = new File("target/checkpoint/changelog.checkpoint");
+        checkpoint.delete();
+        addChanges("doc-1", "doc-2", "doc-3");
+
+        assertEquals(3, createConsumer(checkpoint).poll());
+
+        addChanges("doc-4", "doc-5");
+        // every poll uses a new consumer, which only knows the token saved in the checkpoint file
+        assertEquals(2, createConsumer(checkpoint).poll());
+        assertEquals(0, createConsumer(checkpoint).poll());
+
+        assertEquals(Arrays.asList("doc-1", "doc-2", "doc-3", "doc-4", "doc-5"), delivered);
+    }
+
+    @Test
+    public void tokenDoesNotMovePastFailedEvent() throws Exception {
+        File checkpoint = new File("target/checkpoint/failing-changelog.checkpoint");
+        checkpoint.delete();
+        addChanges("doc-1", "doc-2", "doc-3");
+        failOnce = "doc-2";
+
+        CMISConsumer consumer = createConsumer(checkpoint, 2);
+        // the exchanges are dispatched asynchronously, polls are triggered by the test only
+        consumer.setInitialDelay(60000);
+        consumer.start();
+        try {
+            assertEquals(2, consumer.poll());
+            assertEquals(3, consumer.poll());
+        } finally {
+            consumer.stop();
+        }
+
+        // the page of the failed event is read again, nothing after it was skipped
+        assertEquals(Arrays.asList("doc-1", "doc-1", "doc-2", "doc-3"), delivered);
+    }
+
+    @Test
+    public void failedEventIsHandedToTheExceptionHandler() throws Exception {
+        File checkpoint = new File("target/checkpoint/handled-changelog.checkpoint");
+        checkpoint.delete();
+        addChanges("doc-1", "doc-2");
+        failOnce = "doc-2";
+        final List<Throwable> handled = new ArrayList<Throwable>();
+
+        // without maxInflightExchanges the exchanges are processed by the polling thread
+        CMISConsumer consumer = createConsumer(checkpoint);
+        consumer.setExceptionHandler(new ExceptionHandler() {
+            public void handleException(Throwable exception) {
+                handled.add(exception);
+            }
+
+            public void handleException(String message, Throwable exception) {
+                handled.add(exception);
+            }
+
+            public void handleException(String message, Exchange exchange, Throwable exception) {
+                handled.add(exception);
+            }
+        });
+        assertEquals(2, consumer.poll());
+
+        assertEquals(1, handled.size());
+        assertTrue(handled.get(0) instanceof IllegalStateException);
+    }
+
+    @Test
+    public void pollFailsWhenTheTokenDoesNotMove() throws Exception {
+        File checkpoint = new File("target/checkpoint/stale-changelog.checkpoint");
+        checkpoint.delete();
+        addChanges("doc-1", "doc-2", "doc-3");
+        // like the AtomPub binding of OpenCMIS 0.5, which never fills in the latest change log token
+        tokenHandedBack = true;
+
+        try {
+            createConsumer(checkpoint).poll();
+            fail("Should have failed as the change log token does not move");
+        } catch (RuntimeCamelException e) {
+            // expected
+        }
+
+        // the first page was delivered once and is not fetched over and over
+        assertEquals(Arrays.asList("doc-1", "doc-2"), delivered);
+        assertFalse(checkpoint.exists());
+    }
+
+    private void addChanges(String... objectIds) {
+        for (String objectId : objectIds) {
+            changeLog.add(new ChangeEventImpl(ChangeType.DELETED, new GregorianCalendar(), objectId, null, null, null));
+        }
+    }
+
+    private CMISConsumer createConsumer(File checkpoint) throws Exception {
+        return createConsumer(checkpoint, 0);
+    }
+
+    private CMISConsumer createConsumer(File checkpoint, int maxInflightExchanges) throws Exception {
+        final Session session = createChangeLogSession();
+        CMISSessionFacade sessionFacade = new CMISSessionFacade("http://localhost/changelog") {
+            @Override
+            Session getSession() {
+                return session;
+            }
+        };
+        sessionFacade.setChangeLog(true);
+        sessionFacade.setCheckpointFile(checkpoint.getPath());
+        sessionFacade.setPageSize(2);
+        sessionFacade.setLazyStartup(true);
+        sessionFacade.setMaxInflightExchanges(maxInflightExchanges);
+        sessionFacade.initSession();
+
+        CMISEndpoint endpoint = new CMISEndpoint("cmis://http://localhost/changelog", new CMISComponent(), sessionFacade);
+        endpoint.setCamelContext(new DefaultCamelContext());
+        return new CMISConsumer(endpoint, new Processor() {
+            public void process(Exchange exchange) throws Exception {
+                String objectId = exchange.getIn().getHeader("cmis:objectId", String.class);
+                if (objectId.equals(failOnce)) {
+                    failOnce = null;
+                    exchange.setException(new IllegalStateException("Failing " + objectId + " once"));
+                    return;
+                }
+                delivered.add(objectId);
+            }
+        }, sessionFacade);
+    }
+
+    /**
+     * A session answering getContentChanges like a repository does: the token of an event is its
+     * position in the log, and the event of the token asked for is returned again first.
+     */
+    private Session createChangeLogSession() {
+        final RepositoryCapabilitiesImpl capabilities = new RepositoryCapabilitiesImpl();
+        capabilities.setCapabilityChanges(CapabilityChanges.OBJECTIDSONLY);
+        final RepositoryInfoImpl repositoryInfo = new RepositoryInfoImpl();
+        repositoryInfo.setId("changelog");
+        repositoryInfo.setCapabilities(capabilities);
+
+        return (Session) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Session.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("getRepositoryInfo")) {
+                    return repositoryInfo;
+                }
+                if (method.getName().equals("getContentChanges") && args.length == 3) {
+                    int from = args[0] != null ? Integer.parseInt((String) args[0]) : 0;
+                    int to = Math.min(changeLog.size(), from + ((Number) args[2]).intValue());
+                    List<ChangeEvent> events = new ArrayList<ChangeEvent>(changeLog.subList(from, to));
+                    String latestToken = to > from && !tokenHandedBack ? String.valueOf(to - 1) : (String) args[0];
+                    return new ChangeEventsImpl(latestToken, events, to < changeLog.size(), changeLog.size());
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+}
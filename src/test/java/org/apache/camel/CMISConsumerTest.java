@@ -1,12 +1,20 @@
 package org.apache.camel;
 
+import org.apache.camel.builder.RouteBuilder;
 import org.apache.camel.component.mock.MockEndpoint;
 import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.QueryResult;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.File;
 import java.io.UnsupportedEncodingException;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class CMISConsumerTest extends CMISTestSupport {
 
@@ -31,6 +39,220 @@ public class CMISConsumerTest extends CMISTestSupport {
         assertTrue(getNodeNameForIndex(exchanges, 4).contains(".txt"));
     }
 
+    @Test
+    public void parallelWalkerKeepsRootToLeavesOrder() throws Exception {
+        resultEndpoint.expectedMessageCount(5);
+
+        Consumer treeBasedConsumer = createConsumerFor(CMIS_ENDPOINT_TEST_SERVER + "?walkerThreads=4");
+        treeBasedConsumer.start();
+
+        resultEndpoint.assertIsSatisfied();
+        treeBasedConsumer.stop();
+
+        List<Exchange> exchanges = resultEndpoint.getExchanges();
+        assertTrue(getNodeNameForIndex(exchanges, 0).equals("RootFolder"));
+        assertTrue(getNodeNameForIndex(exchanges, 1).equals("Folder1"));
+        assertTrue(getNodeNameForIndex(exchanges, 2).equals("Folder2"));
+        assertTrue(getNodeNameForIndex(exchanges, 3).contains(".txt"));
+        assertTrue(getNodeNameForIndex(exchanges, 4).contains(".txt"));
+    }
+
+    @Test
+    public void unorderedParallelWalkerHonoursReadCount() throws Exception {
+        resultEndpoint.expectedMessageCount(3);
+
+        Consumer treeBasedConsumer = createConsumerFor(CMIS_ENDPOINT_TEST_SERVER + "?walkerThreads=4&walkerOrdered=false&readCount=3");
+        treeBasedConsumer.start();
+
+        resultEndpoint.assertIsSatisfied();
+        treeBasedConsumer.stop();
+    }
+
+    @Test
+    public void depthFirstTraversalWithSingleBufferedPageKeepsRootToLeavesOrder() throws Exception {
+        resultEndpoint.expectedMessageCount(5);
+
+        Consumer treeBasedConsumer = createConsumerFor(CMIS_ENDPOINT_TEST_SERVER + "?traversal=depthFirst&maxBufferedPages=1&pageSize=1");
+        treeBasedConsumer.start();
+
+        resultEndpoint.assertIsSatisfied();
+        treeBasedConsumer.stop();
+
+        List<Exchange> exchanges = resultEndpoint.getExchanges();
+        assertTrue(getNodeNameForIndex(exchanges, 0).equals("RootFolder"));
+        assertTrue(getNodeNameForIndex(exchanges, 1).equals("Folder1"));
+        assertTrue(getNodeNameForIndex(exchanges, 2).equals("Folder2"));
+        assertTrue(getNodeNameForIndex(exchanges, 3).contains(".txt"));
+        assertTrue(getNodeNameForIndex(exchanges, 4).contains(".txt"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownTraversalIsRejectedWhenTheEndpointIsCreated() throws Exception {
+        CMISSessionFacade sessionFacade = new CMISSessionFacade(CMIS_ENDPOINT_TEST_SERVER);
+        sessionFacade.setTraversal("sideways");
+        sessionFacade.setLazyStartup(true);
+        sessionFacade.initSession();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void traversalWithWalkerThreadsIsRejectedWhenTheEndpointIsCreated() throws Exception {
+        CMISSessionFacade sessionFacade = new CMISSessionFacade(CMIS_ENDPOINT_TEST_SERVER);
+        sessionFacade.setTraversal(IterativeTreeWalker.BREADTH_FIRST);
+        sessionFacade.setWalkerThreads(4);
+        sessionFacade.setLazyStartup(true);
+        sessionFacade.initSession();
+    }
+
+    @Test
+    public void fetchingDescendantsInChunksSendsAllNodes() throws Exception {
+        resultEndpoint.expectedMessageCount(5);
+
+        Consumer treeBasedConsumer = createConsumerFor(CMIS_ENDPOINT_TEST_SERVER + "?descendantsDepth=1");
+        treeBasedConsumer.start();
+
+        resultEndpoint.assertIsSatisfied();
+        treeBasedConsumer.stop();
+
+        List<Exchange> exchanges = resultEndpoint.getExchanges();
+        assertTrue(getNodeNameForIndex(exchanges, 0).equals("RootFolder"));
+        assertTrue(getNodeNameForIndex(exchanges, 1).equals("Folder1"));
+        assertTrue(getNodeNameForIndex(exchanges, 2).equals("Folder2"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidDescendantsDepthIsRejectedWhenTheEndpointIsCreated() throws Exception {
+        CMISSessionFacade sessionFacade = new CMISSessionFacade(CMIS_ENDPOINT_TEST_SERVER);
+        sessionFacade.setDescendantsDepth(-2);
+        sessionFacade.setLazyStartup(true);
+        sessionFacade.initSession();
+    }
+
+    @Test
+    public void propertyFilterLimitsTheHeadersOfEachNode() throws Exception {
+        resultEndpoint.expectedMessageCount(5);
+
+        Consumer treeBasedConsumer = createConsumerFor(CMIS_ENDPOINT_TEST_SERVER + "?filter=cmis:name&includeAllowableActions=false");
+        treeBasedConsumer.start();
+
+        resultEndpoint.assertIsSatisfied();
+        treeBasedConsumer.stop();
+
+        List<Exchange> exchanges = resultEndpoint.getExchanges();
+        assertTrue(getNodeNameForIndex(exchanges, 0).equals("RootFolder"));
+        assertTrue(getNodeNameForIndex(exchanges, 3).contains(".txt"));
+        assertNull(exchanges.get(3).getIn().getHeader("cmis:createdBy"));
+        assertNotNull(exchanges.get(3).getIn().getHeader("cmis:objectId"));
+    }
+
+    @Test
+    public void projectionLimitsTheHeadersOfEachNode() throws Exception {
+        resultEndpoint.expectedMessageCount(5);
+
+        Consumer treeBasedConsumer = createConsumerFor(CMIS_ENDPOINT_TEST_SERVER + "?projection=cmis:name");
+        treeBasedConsumer.start();
+
+        resultEndpoint.assertIsSatisfied();
+        treeBasedConsumer.stop();
+
+        List<Exchange> exchanges = resultEndpoint.getExchanges();
+        assertTrue(getNodeNameForIndex(exchanges, 3).contains(".txt"));
+        assertNull(exchanges.get(3).getIn().getHeader("cmis:createdBy"));
+        assertNotNull(exchanges.get(3).getIn().getHeader("cmis:objectId"));
+        assertNotNull(exchanges.get(3).getIn().getHeader(CamelCMISConstants.CMIS_FOLDER_PATH));
+    }
+
+    @Test
+    public void multiValuedModeConvertsDatesAndIntegers() throws Exception {
+        resultEndpoint.expectedMessageCount(5);
+
+        Consumer treeBasedConsumer = createConsumerFor(CMIS_ENDPOINT_TEST_SERVER + "?multiValued=true");
+        treeBasedConsumer.start();
+
+        resultEndpoint.assertIsSatisfied();
+        treeBasedConsumer.stop();
+
+        Message document = resultEndpoint.getExchanges().get(3).getIn();
+        assertTrue(document.getHeader("cmis:creationDate") instanceof Date);
+        assertTrue(document.getHeader("cmis:contentStreamLength") instanceof Long);
+    }
+
+    @Test
+    public void cachedContentIsSpooledAboveThreshold() throws Exception {
+        resultEndpoint.expectedMessageCount(5);
+
+        Consumer treeBasedConsumer = createConsumerFor(CMIS_ENDPOINT_TEST_SERVER
+                + "?readContent=true&cacheContent=true&spoolThreshold=4&spoolDirectory=target/spool");
+        treeBasedConsumer.start();
+
+        resultEndpoint.assertIsSatisfied();
+        treeBasedConsumer.stop();
+
+        Message document = resultEndpoint.getExchanges().get(3).getIn();
+        String content = "Document" + document.getHeader("cmis:name", String.class).replace(".txt", "");
+        assertTrue(document.getBody() instanceof SpooledContent);
+        assertEquals(content, document.getBody(String.class));
+        ((StreamCache) document.getBody()).reset();
+        assertEquals(content, document.getBody(String.class));
+    }
+
+    @Test
+    public void spooledContentIsDeletedOnceTheExchangeCompletes() throws Exception {
+        final List<File> spoolFiles = new CopyOnWriteArrayList<File>();
+        resultEndpoint.expectedMinimumMessageCount(5);
+        context.addRoutes(new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("cmis://" + CMIS_ENDPOINT_TEST_SERVER + "?readContent=true&cacheContent=true&spoolThreshold=4&spoolDirectory=target/spool")
+                    .routeId("spooling")
+                    .process(new Processor() {
+                        public void process(Exchange exchange) throws Exception {
+                            Object body = exchange.getIn().getBody();
+                            if (body instanceof SpooledContent) {
+                                File file = ((SpooledContent) body).getFile();
+                                assertTrue(file.exists());
+                                spoolFiles.add(file);
+                            }
+                        }
+                    })
+                    .to("mock:result");
+            }
+        });
+
+        resultEndpoint.assertIsSatisfied();
+        context.stopRoute("spooling");
+
+        assertFalse(spoolFiles.isEmpty());
+        for (File file : spoolFiles) {
+            assertFalse(file + " was not deleted", file.exists());
+        }
+    }
+
+    @Test
+    public void contentRangeIsRead() throws Exception {
+        resultEndpoint.expectedMessageCount(5);
+
+        Consumer treeBasedConsumer = createConsumerFor(CMIS_ENDPOINT_TEST_SERVER
+                + "?readContent=true&cacheContent=true&contentOffset=2&contentLength=4");
+        treeBasedConsumer.start();
+
+        resultEndpoint.assertIsSatisfied();
+        treeBasedConsumer.stop();
+
+        Message document = resultEndpoint.getExchanges().get(3).getIn();
+        assertEquals("cume", document.getBody(String.class));
+    }
+
+    @Test
+    public void asyncDispatchSendsAllNodes() throws Exception {
+        resultEndpoint.expectedMessageCount(5);
+
+        Consumer treeBasedConsumer = createConsumerFor(CMIS_ENDPOINT_TEST_SERVER + "?maxInflightExchanges=2&pageSize=1");
+        treeBasedConsumer.start();
+
+        resultEndpoint.assertIsSatisfied();
+        treeBasedConsumer.stop();
+    }
+
     @Test
     public void consumeDocumentsWithQuery() throws Exception {
         resultEndpoint.expectedMessageCount(2);
@@ -41,11 +263,170 @@ public class CMISConsumerTest extends CMISTestSupport {
         queryBasedConsumer.stop();
     }
 
+    @Test
+    public void prefetchingPagesKeepsRootToLeavesOrder() throws Exception {
+        resultEndpoint.expectedMessageCount(5);
+
+        Consumer treeBasedConsumer = createConsumerFor(CMIS_ENDPOINT_TEST_SERVER + "?prefetchDepth=2&pageSize=1");
+        treeBasedConsumer.start();
+
+        resultEndpoint.assertIsSatisfied();
+        treeBasedConsumer.stop();
+
+        List<Exchange> exchanges = resultEndpoint.getExchanges();
+        assertTrue(getNodeNameForIndex(exchanges, 0).equals("RootFolder"));
+        assertTrue(getNodeNameForIndex(exchanges, 1).equals("Folder1"));
+        assertTrue(getNodeNameForIndex(exchanges, 2).equals("Folder2"));
+        assertTrue(getNodeNameForIndex(exchanges, 3).contains(".txt"));
+        assertTrue(getNodeNameForIndex(exchanges, 4).contains(".txt"));
+    }
+
+    @Test
+    public void consumeDocumentsWithQueryPrefetchingPages() throws Exception {
+        resultEndpoint.expectedMessageCount(2);
+
+        Consumer queryBasedConsumer = createConsumerFor(CMIS_ENDPOINT_TEST_SERVER + "?query=SELECT * FROM cmis:document&prefetchDepth=3&pageSize=1");
+        queryBasedConsumer.start();
+        resultEndpoint.assertIsSatisfied();
+        queryBasedConsumer.stop();
+    }
+
+    @Test
+    public void unchangedNodesAreNotSentAgainByNextPolls() throws Exception {
+        new File("target/index/consumer.index").delete();
+        resultEndpoint.expectedMessageCount(5);
+        resultEndpoint.setAssertPeriod(2000);
+
+        Consumer treeBasedConsumer = createConsumerFor(CMIS_ENDPOINT_TEST_SERVER + "?skipUnchanged=true&indexFile=target/index/consumer.index");
+        treeBasedConsumer.start();
+
+        resultEndpoint.assertIsSatisfied();
+        treeBasedConsumer.stop();
+    }
+
+    @Test
+    public void nodeWhoseExchangeFailedIsSentAgainByNextPoll() throws Exception {
+        new File("target/index/failing.index").delete();
+        resultEndpoint.expectedMessageCount(5);
+        resultEndpoint.setAssertPeriod(2000);
+
+        final AtomicBoolean failed = new AtomicBoolean();
+        Endpoint endpoint = context.getEndpoint("cmis://" + CMIS_ENDPOINT_TEST_SERVER + "?skipUnchanged=true&indexFile=target/index/failing.index");
+        Consumer treeBasedConsumer = endpoint.createConsumer(new Processor() {
+            public void process(Exchange exchange) throws Exception {
+                if ("2.1.txt".equals(exchange.getIn().getHeader("cmis:name")) && failed.compareAndSet(false, true)) {
+                    exchange.setException(new IllegalStateException("Failing the first delivery"));
+                    return;
+                }
+                template.send("mock:result", exchange);
+            }
+        });
+        treeBasedConsumer.start();
+
+        resultEndpoint.assertIsSatisfied();
+        treeBasedConsumer.stop();
+
+        assertTrue(failed.get());
+        List<Exchange> exchanges = resultEndpoint.getExchanges();
+        assertEquals("2.1.txt", getNodeNameForIndex(exchanges, 4));
+    }
+
+    @Test
+    public void unchangedFoldersAreNotListedAgainByNextPolls() throws Exception {
+        new File("target/index/pruning.index").delete();
+        resultEndpoint.expectedMessageCount(5);
+        resultEndpoint.setAssertPeriod(2000);
+
+        Consumer treeBasedConsumer = createConsumerFor(CMIS_ENDPOINT_TEST_SERVER + "?pruneUnchangedFolders=true&indexFile=target/index/pruning.index");
+        treeBasedConsumer.start();
+
+        resultEndpoint.assertIsSatisfied();
+        treeBasedConsumer.stop();
+
+        List<Exchange> exchanges = resultEndpoint.getExchanges();
+        assertTrue(getNodeNameForIndex(exchanges, 0).equals("RootFolder"));
+        assertTrue(getNodeNameForIndex(exchanges, 1).equals("Folder1"));
+        assertTrue(getNodeNameForIndex(exchanges, 2).equals("Folder2"));
+    }
+
+    @Test
+    public void watermarkQueryDeliversEachDocumentOnce() throws Exception {
+        new File("target/checkpoint/watermark.checkpoint").delete();
+        resultEndpoint.expectedMessageCount(2);
+        resultEndpoint.setAssertPeriod(2000);
+
+        Consumer queryBasedConsumer = createConsumerFor(CMIS_ENDPOINT_TEST_SERVER
+                + "?query=SELECT * FROM cmis:document&watermark=true&pageSize=1&checkpointFile=target/checkpoint/watermark.checkpoint");
+        queryBasedConsumer.start();
+        resultEndpoint.assertIsSatisfied();
+        queryBasedConsumer.stop();
+    }
+
+    @Test
+    public void twoShardsDeliverEachDocumentOnce() throws Exception {
+        MockEndpoint firstShardEndpoint = getMockEndpoint("mock:shard0");
+        MockEndpoint secondShardEndpoint = getMockEndpoint("mock:shard1");
+
+        CMISConsumer firstShard = (CMISConsumer) createConsumerFor(CMIS_ENDPOINT_TEST_SERVER
+                + "?query=SELECT * FROM cmis:document&shardCount=2&shardIndex=0&shardThreads=2", "mock:shard0");
+        CMISConsumer secondShard = (CMISConsumer) createConsumerFor(CMIS_ENDPOINT_TEST_SERVER
+                + "?query=SELECT * FROM cmis:document&shardCount=2&shardIndex=1&shardThreads=2", "mock:shard1");
+        // a single poll each, as every poll of a query without watermark delivers all the rows again
+        firstShard.setDelay(60000);
+        secondShard.setDelay(60000);
+        firstShard.start();
+        secondShard.start();
+        for (int i = 0; i < 100 && firstShardEndpoint.getReceivedCounter() + secondShardEndpoint.getReceivedCounter() < 2; i++) {
+            Thread.sleep(100);
+        }
+        Thread.sleep(500);
+        firstShard.stop();
+        secondShard.stop();
+
+        Set<String> documentIds = new HashSet<String>();
+        for (QueryResult row : createSession().query("SELECT cmis:objectId FROM cmis:document", false)) {
+            documentIds.add((String) row.getPropertyValueById("cmis:objectId"));
+        }
+        assertEquals(2, documentIds.size());
+
+        Set<String> delivered = new HashSet<String>();
+        MockEndpoint[] shards = {firstShardEndpoint, secondShardEndpoint};
+        for (int shardIndex = 0; shardIndex < shards.length; shardIndex++) {
+            for (Exchange exchange : shards[shardIndex].getExchanges()) {
+                String objectId = exchange.getIn().getHeader("cmis:objectId", String.class);
+                assertEquals(shardIndex, CMISHelper.shardOf(objectId, 2));
+                assertTrue("Delivered twice: " + objectId, delivered.add(objectId));
+            }
+        }
+        assertEquals(documentIds, delivered);
+    }
+
+    @Test
+    public void metricsCountPagesAndNodes() throws Exception {
+        resultEndpoint.expectedMessageCount(5);
+
+        CMISEndpoint endpoint = (CMISEndpoint) context.getEndpoint("cmis://" + CMIS_ENDPOINT_TEST_SERVER + "?pageSize=1");
+        Consumer treeBasedConsumer = createConsumerFor(CMIS_ENDPOINT_TEST_SERVER + "?pageSize=1");
+        treeBasedConsumer.start();
+        resultEndpoint.assertIsSatisfied();
+        treeBasedConsumer.stop();
+
+        CMISMetrics metrics = endpoint.getMetrics();
+        assertTrue(metrics.getObjectsEmitted() >= 5);
+        assertTrue(metrics.getPagesFetched() >= 4);
+        assertEquals(metrics.getPagesFetched(), metrics.getOperationStatistics(CMISMetrics.GET_CHILDREN).getCount());
+        assertEquals(0, metrics.getInflightExchanges());
+    }
+
     private Consumer createConsumerFor(String path) throws Exception {
+        return createConsumerFor(path, "mock:result");
+    }
+
+    private Consumer createConsumerFor(String path, final String mockUri) throws Exception {
         Endpoint endpoint = context.getEndpoint("cmis://" + path);
         return endpoint.createConsumer(new Processor() {
             public void process(Exchange exchange) throws Exception {
-                template.send("mock:result", exchange);
+                template.send(mockUri, exchange);
             }
         });
     }
@@ -0,0 +1,124 @@
+package org.apache.camel;
+
+import org.apache.camel.util.CaseInsensitiveMap;
+import org.apache.chemistry.opencmis.client.api.ObjectType;
+import org.apache.chemistry.opencmis.client.runtime.objecttype.DocumentTypeImpl;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.apache.chemistry.opencmis.commons.data.PropertyData;
+import org.apache.chemistry.opencmis.commons.enums.Cardinality;
+import org.apache.chemistry.opencmis.commons.enums.PropertyType;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.AbstractPropertyDefinition;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.DocumentTypeDefinitionImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.PropertyIdImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.PropertyIntegerDefinitionImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.PropertyIntegerImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.PropertyStringDefinitionImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.PropertyStringImpl;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CMISHelperTest {
+
+    @Test
+    public void rowPropertiesKeepTheirIds() {
+        Map<String, Object> result = CMISHelper.propertyDataToMap(createProperties());
+
+        assertFalse(result instanceof CaseInsensitiveMap);
+        assertEquals(3, result.size());
+        assertTrue(result.keySet().contains(PropertyIds.OBJECT_ID));
+        assertEquals("document.txt", result.get(PropertyIds.NAME));
+    }
+
+    @Test
+    public void propertiesAreMappedIntoHeaderMap() {
+        Map<String, Object> result = CMISHelper.propertyDataToHeaders(createProperties(), null);
+
+        assertTrue(result instanceof CaseInsensitiveMap);
+        assertEquals(3, result.size());
+        assertEquals("document.txt", result.get(PropertyIds.NAME));
+    }
+
+    @Test
+    public void projectionKeepsOnlyTheGivenProperties() {
+        Map<String, Object> result = CMISHelper.propertyDataToMap(createProperties(), Collections.singleton(PropertyIds.NAME));
+
+        assertEquals(1, result.size());
+        assertEquals("document.txt", result.get(PropertyIds.NAME));
+    }
+
+    @Test
+    public void multiValuedPropertiesKeepAllTheirValues() {
+        List<PropertyData<?>> properties = createProperties();
+        properties.add(new PropertyStringImpl("custom:tags", Arrays.asList("a", "b")));
+        properties.add(new PropertyIntegerImpl("custom:sizes", Arrays.asList(BigInteger.ONE, BigInteger.TEN)));
+
+        Map<String, Object> result = CMISHelper.propertyDataToMultiValuedMap(properties, null, createType());
+
+        assertEquals(Arrays.asList("a", "b"), result.get("custom:tags"));
+        assertEquals(Arrays.asList(1L, 10L), result.get("custom:sizes"));
+        assertEquals("document.txt", result.get(PropertyIds.NAME));
+    }
+
+    @Test
+    public void cardinalityComesFromTheDefinitionOnly() {
+        List<PropertyData<?>> properties = createProperties();
+        properties.add(new PropertyStringImpl("custom:tags", Collections.singletonList("a")));
+        properties.add(new PropertyStringImpl("custom:undefined", Arrays.asList("a", "b")));
+
+        Map<String, Object> result = CMISHelper.propertyDataToMultiValuedMap(properties, null, createType());
+
+        assertEquals(Collections.singletonList("a"), result.get("custom:tags"));
+        assertEquals("a", result.get("custom:undefined"));
+    }
+
+    @Test
+    public void datesAndIntegersAreConverted() {
+        GregorianCalendar calendar = new GregorianCalendar();
+
+        assertEquals(calendar.getTime(), CMISHelper.convertValue(calendar));
+        assertEquals(128L, CMISHelper.convertValue(BigInteger.valueOf(128)));
+        assertEquals(Long.MAX_VALUE, CMISHelper.convertValue(BigInteger.valueOf(Long.MAX_VALUE)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void integerBeyondLongIsRejected() {
+        // mapping it to a BigInteger would mix Longs and BigIntegers in the values of one property
+        CMISHelper.convertValue(BigInteger.ONE.shiftLeft(64));
+    }
+
+    private ObjectType createType() {
+        DocumentTypeDefinitionImpl definition = new DocumentTypeDefinitionImpl();
+        definition.setId("custom:document");
+        definition.addPropertyDefinition(createDefinition(new PropertyStringDefinitionImpl(), PropertyIds.NAME, PropertyType.STRING, Cardinality.SINGLE));
+        definition.addPropertyDefinition(createDefinition(new PropertyStringDefinitionImpl(), "custom:tags", PropertyType.STRING, Cardinality.MULTI));
+        definition.addPropertyDefinition(createDefinition(new PropertyIntegerDefinitionImpl(), "custom:sizes", PropertyType.INTEGER, Cardinality.MULTI));
+        return new DocumentTypeImpl(null, definition);
+    }
+
+    private <T> AbstractPropertyDefinition<T> createDefinition(AbstractPropertyDefinition<T> definition, String id,
+                                                              PropertyType propertyType, Cardinality cardinality) {
+        definition.setId(id);
+        definition.setPropertyType(propertyType);
+        definition.setCardinality(cardinality);
+        return definition;
+    }
+
+    private List<PropertyData<?>> createProperties() {
+        List<PropertyData<?>> properties = new ArrayList<PropertyData<?>>();
+        properties.add(new PropertyIdImpl(PropertyIds.OBJECT_ID, "100"));
+        properties.add(new PropertyStringImpl(PropertyIds.NAME, "document.txt"));
+        properties.add(new PropertyStringImpl(PropertyIds.CREATED_BY, "admin"));
+        return properties;
+    }
+}
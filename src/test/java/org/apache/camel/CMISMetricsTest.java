@@ -0,0 +1,49 @@
+package org.apache.camel;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class CMISMetricsTest {
+
+    @Test
+    public void percentilesAreUpperBoundsOfTheirBuckets() {
+        CMISMetrics metrics = new CMISMetrics();
+        CMISMetrics.OperationStatistics statistics = metrics.getOperationStatistics(CMISMetrics.QUERY);
+        for (int i = 0; i < 99; i++) {
+            statistics.record(1500000);
+        }
+        statistics.record(100000000);
+
+        assertEquals(100, statistics.getCount());
+        assertEquals(2.048, statistics.getPercentileMillis(50), 0);
+        assertEquals(2.048, statistics.getPercentileMillis(99), 0);
+        assertEquals(100, statistics.getPercentileMillis(100), 0);
+        assertEquals(100, statistics.getMaxMillis(), 0);
+    }
+
+    @Test
+    public void pagesAreCountedWithTheirOperation() {
+        CMISMetrics metrics = new CMISMetrics();
+        metrics.recordPage(CMISMetrics.GET_CHILDREN, System.nanoTime());
+        metrics.recordPage(CMISMetrics.GET_CHILDREN, System.nanoTime());
+
+        assertEquals(2, metrics.getPagesFetched());
+        assertEquals(2, metrics.getOperationStatistics(CMISMetrics.GET_CHILDREN).getCount());
+        assertEquals(1, metrics.getOperationStatistics().size());
+    }
+
+    @Test
+    public void contentIsCountedWhileRead() throws Exception {
+        CMISMetrics metrics = new CMISMetrics();
+        InputStream stream = metrics.countRead(new ByteArrayInputStream(new byte[100]));
+        stream.read();
+        stream.read(new byte[50]);
+
+        assertEquals(51, metrics.getContentBytesRead());
+        assertEquals(0, metrics.getContentBytesWritten());
+    }
+}
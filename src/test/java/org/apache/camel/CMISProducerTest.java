@@ -17,12 +17,22 @@
 package org.apache.camel;
 
 import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.impl.DefaultExchange;
 import org.apache.chemistry.opencmis.client.api.CmisObject;
 import org.apache.chemistry.opencmis.client.api.Document;
 import org.apache.chemistry.opencmis.client.api.Folder;
 import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisBaseException;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 public class CMISProducerTest extends CMISTestSupport {
 
     @Produce(uri = "direct:start")
@@ -44,6 +54,59 @@ public class CMISProducerTest extends CMISTestSupport {
         assertEquals(content, newNodeContent);
     }
 
+    @Test
+    public void storeFileBodyWithoutBufferingIt() throws Exception {
+        File file = new File("target/upload.txt");
+        FileWriter writer = new FileWriter(file);
+        writer.write("Some file content to be stored");
+        writer.close();
+
+        try {
+            Exchange exchange = new DefaultExchange(context);
+            exchange.getIn().setBody(file);
+            exchange.getIn().getHeaders().put(PropertyIds.CONTENT_STREAM_MIME_TYPE, "text/plain; charset=UTF-8");
+            exchange.getIn().getHeaders().put(PropertyIds.NAME, "upload.txt");
+
+            template.send(exchange);
+            String newNodeId = exchange.getOut().getBody(String.class);
+
+            assertEquals("Some file content to be stored", getDocumentContentAsString(newNodeId));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void storeInputStreamBodyWithContentLength() throws Exception {
+        byte[] content = "Some streamed content of known length".getBytes("UTF-8");
+        Exchange exchange = new DefaultExchange(context);
+        exchange.getIn().setBody(new ByteArrayInputStream(content));
+        exchange.getIn().getHeaders().put(Exchange.CONTENT_LENGTH, content.length);
+        exchange.getIn().getHeaders().put(PropertyIds.CONTENT_STREAM_MIME_TYPE, "text/plain; charset=UTF-8");
+        exchange.getIn().getHeaders().put(PropertyIds.NAME, "stream-with-length.txt");
+
+        template.send(exchange);
+        String newNodeId = exchange.getOut().getBody(String.class);
+
+        Document document = (Document) retrieveCMISObjectByIdFromServer(newNodeId);
+        assertEquals(content.length, document.getContentStreamLength());
+        assertEquals("Some streamed content of known length", getDocumentContentAsString(newNodeId));
+    }
+
+    @Test
+    public void storeInputStreamBodyWithoutContentLength() throws Exception {
+        Exchange exchange = new DefaultExchange(context);
+        exchange.getIn().setBody(new ByteArrayInputStream("Some streamed content of unknown length".getBytes("UTF-8")));
+        exchange.getIn().getHeaders().put(PropertyIds.CONTENT_STREAM_MIME_TYPE, "text/plain; charset=UTF-8");
+        exchange.getIn().getHeaders().put(PropertyIds.NAME, "stream-without-length.txt");
+
+        template.send(exchange);
+        String newNodeId = exchange.getOut().getBody(String.class);
+
+        assertNull(exchange.getException());
+        assertEquals("Some streamed content of unknown length", getDocumentContentAsString(newNodeId));
+    }
+
     @Test
     public void getDocumentMimeTypeFromMessageContentType() throws Exception {
         Exchange exchange = createExchangeWithInBody("Some content to be store");
@@ -126,6 +189,22 @@ public class CMISProducerTest extends CMISTestSupport {
         producer.process(exchange);
     }
 
+    @Test
+    public void lazyStartupDefersConnectingUntilFirstUse() throws Exception {
+        Endpoint endpoint = context.getEndpoint("cmis://" + CMIS_ENDPOINT_TEST_SERVER + "?lazyStartup=true&repositoryId=NON_EXISTING_ID");
+        Producer producer = endpoint.createProducer();
+
+        Exchange exchange = createExchangeWithInBody("Some content to be store");
+        exchange.getIn().getHeaders().put(CamelCMISConstants.CMIS_MIME_TYPE, "text/plain; charset=UTF-8");
+        exchange.getIn().getHeaders().put(PropertyIds.NAME, "test.txt");
+        try {
+            producer.process(exchange);
+            fail("Should not connect to a non existing repository");
+        } catch (CmisBaseException e) {
+            // expected
+        }
+    }
+
     @Test
     public void createDocumentAtSpecificPath() throws Exception {
         Folder folder1 = createFolderWithName("Folder1");
@@ -145,6 +224,68 @@ public class CMISProducerTest extends CMISTestSupport {
         assertEquals(existingFolderStructure + "/test.file", documentFullPath);
     }
 
+    @Test
+    public void createDocumentsInSameFolderWithFolderCache() throws Exception {
+        createFolderWithName("CachedFolder");
+        Endpoint endpoint = context.getEndpoint("cmis://" + CMIS_ENDPOINT_TEST_SERVER + "?folderCacheSize=10");
+        Producer producer = endpoint.createProducer();
+
+        for (int i = 0; i < 2; i++) {
+            Exchange exchange = createExchangeWithInBody("Some content to be stored");
+            exchange.getIn().getHeaders().put(PropertyIds.CONTENT_STREAM_MIME_TYPE, "text/plain; charset=UTF-8");
+            exchange.getIn().getHeaders().put(PropertyIds.NAME, "test" + i + ".file");
+            exchange.getIn().getHeaders().put(CamelCMISConstants.CMIS_FOLDER_PATH, "/CachedFolder");
+            producer.process(exchange);
+
+            Document document = (Document) retrieveCMISObjectByIdFromServer(exchange.getOut().getBody(String.class));
+            assertEquals("/CachedFolder/test" + i + ".file", document.getPaths().get(0));
+        }
+    }
+
+    @Test
+    public void metricsCountContentBytesWritten() throws Exception {
+        CMISEndpoint endpoint = (CMISEndpoint) context.getEndpoint("cmis://" + CMIS_ENDPOINT_TEST_SERVER + "?pageSize=10");
+        Producer producer = endpoint.createProducer();
+
+        Exchange exchange = createExchangeWithInBody("Some content to be stored");
+        exchange.getIn().getHeaders().put(PropertyIds.CONTENT_STREAM_MIME_TYPE, "text/plain; charset=UTF-8");
+        exchange.getIn().getHeaders().put(PropertyIds.NAME, "metrics.file");
+        producer.process(exchange);
+
+        CMISMetrics metrics = endpoint.getMetrics();
+        assertEquals(25, metrics.getContentBytesWritten());
+        assertEquals(1, metrics.getOperationStatistics(CMISMetrics.CREATE_DOCUMENT).getCount());
+    }
+
+    @Test
+    public void createListOfNodesInBatch() throws Exception {
+        Endpoint endpoint = context.getEndpoint("cmis://" + CMIS_ENDPOINT_TEST_SERVER + "?batch=true&batchThreads=2");
+        Producer producer = endpoint.createProducer();
+        producer.start();
+
+        List<Map<String, Object>> items = new ArrayList<Map<String, Object>>();
+        for (int i = 0; i < 3; i++) {
+            Map<String, Object> item = new HashMap<String, Object>();
+            item.put(PropertyIds.NAME, "batch" + i + ".txt");
+            item.put(PropertyIds.CONTENT_STREAM_MIME_TYPE, "text/plain; charset=UTF-8");
+            item.put(CamelCMISConstants.CAMEL_CMIS_CONTENT_STREAM, "Batch content " + i);
+            items.add(item);
+        }
+        items.add(new HashMap<String, Object>());
+
+        Exchange exchange = new DefaultExchange(context);
+        exchange.getIn().setBody(items);
+        producer.process(exchange);
+        producer.stop();
+
+        List<String> newNodeIds = exchange.getOut().getBody(List.class);
+        assertEquals(4, newNodeIds.size());
+        assertEquals("Batch content 2", getDocumentContentAsString(newNodeIds.get(2)));
+        assertNull(newNodeIds.get(3));
+        Map<Integer, Exception> errors = exchange.getOut().getHeader(CamelCMISConstants.CAMEL_CMIS_BATCH_ERRORS, Map.class);
+        assertTrue(errors.get(3) instanceof NoSuchHeaderException);
+    }
+
     @Test
     public void failCreatingFolderAtNonExistingPath() throws Exception {
         String existingFolderStructure = "/No/Path/Here";
@@ -1,11 +1,13 @@
 package org.apache.camel;
 
+import org.apache.camel.builder.RouteBuilder;
 import org.apache.chemistry.opencmis.client.api.Folder;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -73,6 +75,37 @@ public class CMISQueryProducerTest extends CMISTestSupport {
         assertEquals("This is the first Camel test content.", readFromStream(content));
     }
 
+    @Test
+    public void streamResultsAsIterator() throws Exception {
+        Endpoint endpoint = context.getEndpoint("cmis://" + CMIS_ENDPOINT_TEST_SERVER + "?queryMode=true&streamResults=true&pageSize=1");
+        Producer producer = endpoint.createProducer();
+
+        Exchange exchange = createExchangeWithInBody("SELECT * FROM cmis:document WHERE CONTAINS('Camel test content.')");
+        producer.process(exchange);
+
+        Iterator<Map<String, Object>> documents = exchange.getOut().getBody(Iterator.class);
+        assertNotNull(documents.next().get("cmis:name"));
+        assertNotNull(documents.next().get("cmis:name"));
+        assertFalse(documents.hasNext());
+    }
+
+    @Test
+    public void streamLeftUnreadIsClosedWhenTheExchangeCompletes() throws Exception {
+        context.addRoutes(new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:query")
+                    .to("cmis://" + CMIS_ENDPOINT_TEST_SERVER + "?queryMode=true&streamResults=true&pageSize=1&prefetchDepth=1");
+            }
+        });
+
+        Exchange exchange = createExchangeWithInBody("SELECT * FROM cmis:document WHERE CONTAINS('Camel test content.')");
+        template.send("direct:query", exchange);
+
+        Iterator<Map<String, Object>> documents = exchange.getOut().getBody(Iterator.class);
+        assertFalse(documents.hasNext());
+    }
+
     private void populateServerWithContent() throws UnsupportedEncodingException {
         Folder newFolder = createFolderWithName("CamelCmisTestFolder");
         createTextDocument(newFolder, "This is the first Camel test content.", "test1.txt");
@@ -0,0 +1,113 @@
+package org.apache.camel;
+
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.SessionParameter;
+import org.apache.chemistry.opencmis.commons.enums.BindingType;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisConnectionException;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisPermissionDeniedException;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class CMISSessionRegistryTest extends CMISTestSupport {
+
+    @Test
+    public void sameParametersShareOneSession() throws Exception {
+        CMISSessionRegistry registry = new CMISSessionRegistry();
+
+        Session session = registry.getSession(sessionParameters());
+
+        assertSame(session, registry.getSession(sessionParameters()));
+    }
+
+    @Test
+    public void sessionsOfPoolAreHandedOutRoundRobin() throws Exception {
+        CMISSessionRegistry registry = new CMISSessionRegistry();
+        registry.setPoolSize(2);
+
+        Session first = registry.getSession(sessionParameters());
+        Session second = registry.getSession(sessionParameters());
+
+        assertNotSame(first, second);
+        assertSame(first, registry.getSession(sessionParameters()));
+    }
+
+    @Test
+    public void pinnedSessionIsUsedByEveryRequestOfTheThread() throws Exception {
+        CMISSessionRegistry registry = new CMISSessionRegistry();
+        registry.setPoolSize(2);
+        CMISSessionFacade sessionFacade = new CMISSessionFacade(CMIS_ENDPOINT_TEST_SERVER);
+        sessionFacade.setSessionRegistry(registry);
+        sessionFacade.initSession();
+
+        assertTrue(sessionFacade.pinSession());
+        Session pinned = sessionFacade.getSession();
+        assertSame(pinned, sessionFacade.getSession());
+        assertFalse(sessionFacade.pinSession());
+        assertSame(pinned, sessionFacade.getSession());
+
+        sessionFacade.releaseSession();
+        assertNotSame(pinned, sessionFacade.getSession());
+    }
+
+    @Test
+    public void unreachableRepositoryIsRetried() throws Exception {
+        final int[] failures = {2};
+        CMISSessionFacade sessionFacade = createFacade(new CMISSessionRegistry() {
+            @Override
+            public Session getSession(Map<String, String> parameters) {
+                if (failures[0] > 0) {
+                    failures[0]--;
+                    throw new CmisConnectionException("Repository is unreachable");
+                }
+                return super.getSession(parameters);
+            }
+        });
+
+        assertNotNull(sessionFacade.getSession());
+        assertEquals(0, failures[0]);
+    }
+
+    @Test
+    public void deniedConnectionIsNotRetried() throws Exception {
+        final int[] attempts = {0};
+        CMISSessionFacade sessionFacade = createFacade(new CMISSessionRegistry() {
+            @Override
+            public Session getSession(Map<String, String> parameters) {
+                attempts[0]++;
+                throw new CmisPermissionDeniedException("Wrong credentials");
+            }
+        });
+
+        try {
+            sessionFacade.getSession();
+            fail("Should have failed as the credentials are wrong");
+        } catch (CmisPermissionDeniedException e) {
+            // expected
+        }
+        assertEquals(1, attempts[0]);
+    }
+
+    private CMISSessionFacade createFacade(CMISSessionRegistry registry) {
+        CMISSessionFacade sessionFacade = new CMISSessionFacade(CMIS_ENDPOINT_TEST_SERVER);
+        sessionFacade.setSessionRegistry(registry);
+        sessionFacade.setLazyStartup(true);
+        sessionFacade.setConnectRetries(3);
+        sessionFacade.setConnectRetryDelay(1);
+        sessionFacade.initSession();
+        return sessionFacade;
+    }
+
+    private Map<String, String> sessionParameters() {
+        Map<String, String> parameters = new HashMap<String, String>();
+        parameters.put(SessionParameter.BINDING_TYPE, BindingType.ATOMPUB.value());
+        parameters.put(SessionParameter.ATOMPUB_URL, CMIS_ENDPOINT_TEST_SERVER);
+        return parameters;
+    }
+
+    @Override
+    public boolean isUseRouteBuilder() {
+        return false;
+    }
+}
@@ -0,0 +1,59 @@
+package org.apache.camel;
+
+import org.apache.camel.converter.stream.InputStreamCache;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ContentSpoolTest {
+    private final ContentSpool contentSpool = new ContentSpool(1024, new File("target/spool"));
+
+    @Test
+    public void contentUpToThresholdIsKeptInMemory() throws Exception {
+        StreamCache content = contentSpool.spool(new ByteArrayInputStream(new byte[1024]));
+
+        assertTrue(content instanceof InputStreamCache);
+    }
+
+    @Test
+    public void largerContentIsSpooledAndCanBeReadAgain() throws Exception {
+        byte[] data = new byte[1024 * 1024 + 1];
+        new Random(1).nextBytes(data);
+
+        SpooledContent content = (SpooledContent) contentSpool.spool(new ByteArrayInputStream(data));
+        assertEquals(data.length, content.getLength());
+
+        ByteArrayOutputStream firstRead = new ByteArrayOutputStream();
+        content.writeTo(firstRead);
+        content.reset();
+        ByteArrayOutputStream secondRead = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = content.read(buffer)) != -1) {
+            secondRead.write(buffer, 0, n);
+        }
+        assertTrue(Arrays.equals(data, firstRead.toByteArray()));
+        assertTrue(Arrays.equals(data, secondRead.toByteArray()));
+
+        content.delete();
+        assertFalse(content.getFile().exists());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void spoolDirectoryWhichCannotBeCreatedIsRejected() throws Exception {
+        File file = new File("target/spool-file");
+        file.getParentFile().mkdirs();
+        new FileOutputStream(file).close();
+
+        new ContentSpool(1024, new File(file, "spool"));
+    }
+}
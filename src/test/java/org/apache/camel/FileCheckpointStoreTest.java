@@ -0,0 +1,39 @@
+package org.apache.camel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class FileCheckpointStoreTest {
+    private File file;
+
+    @Before
+    public void setUp() {
+        file = new File("target/checkpoint/test.checkpoint");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void returnsNullWhenNothingWasSaved() throws Exception {
+        assertNull(new FileCheckpointStore(file).load());
+    }
+
+    @Test
+    public void lastSavedCheckpointSurvivesNewStoreInstance() throws Exception {
+        FileCheckpointStore store = new FileCheckpointStore(file);
+        store.save("token-1");
+        store.save("token-2");
+
+        assertEquals("token-2", new FileCheckpointStore(file).load());
+    }
+}
@@ -0,0 +1,35 @@
+package org.apache.camel;
+
+import org.apache.chemistry.opencmis.commons.impl.server.AbstractServiceFactory;
+import org.apache.chemistry.opencmis.commons.server.CallContext;
+import org.apache.chemistry.opencmis.commons.server.CmisService;
+import org.apache.chemistry.opencmis.inmemory.server.InMemoryServiceFactoryImpl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Serves the in memory repository through the local binding. The local binding creates a factory
+ * for every session, so all of them share one repository here.
+ */
+public class InMemoryServiceFactory extends AbstractServiceFactory {
+    public static final String REPOSITORY_ID = "A1";
+    private static InMemoryServiceFactoryImpl repository;
+
+    @Override
+    public void init(Map<String, String> parameters) {
+        synchronized (InMemoryServiceFactory.class) {
+            if (repository == null) {
+                Map<String, String> repositoryParameters = new HashMap<String, String>(parameters);
+                repositoryParameters.put("InMemoryServer.RepositoryId", REPOSITORY_ID);
+                repository = new InMemoryServiceFactoryImpl();
+                repository.init(repositoryParameters);
+            }
+        }
+    }
+
+    @Override
+    public CmisService getService(CallContext context) {
+        return repository.getService(context);
+    }
+}
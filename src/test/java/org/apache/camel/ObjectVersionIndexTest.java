@@ -0,0 +1,87 @@
+package org.apache.camel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ObjectVersionIndexTest {
+    private File file;
+
+    @Before
+    public void setUp() {
+        file = new File("target/index/test.index");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void reportsNewAndChangedObjectsOnly() throws Exception {
+        ObjectVersionIndex index = new ObjectVersionIndex(file);
+
+        assertTrue(index.update("id-1", ObjectVersionIndex.versionOf("token-1")));
+        assertFalse(index.update("id-1", ObjectVersionIndex.versionOf("token-1")));
+        assertTrue(index.update("id-1", ObjectVersionIndex.versionOf("token-2")));
+    }
+
+    @Test
+    public void invalidatedObjectIsReportedAgain() throws Exception {
+        ObjectVersionIndex index = new ObjectVersionIndex(file);
+        index.update("id-1", ObjectVersionIndex.versionOf(1000L));
+        index.invalidate("id-1");
+
+        assertTrue(index.update("id-1", ObjectVersionIndex.versionOf(1000L)));
+    }
+
+    @Test
+    public void lookingUpAVersionDoesNotRecordIt() throws Exception {
+        ObjectVersionIndex index = new ObjectVersionIndex(file);
+        index.update("id-1", ObjectVersionIndex.versionOf("token-1"));
+
+        assertTrue(index.isCurrent("id-1", ObjectVersionIndex.versionOf("token-1")));
+        assertFalse(index.isCurrent("id-1", ObjectVersionIndex.versionOf("token-2")));
+        assertFalse(index.isCurrent("id-1", ObjectVersionIndex.versionOf("token-2")));
+        assertFalse(index.isCurrent("id-2", ObjectVersionIndex.versionOf("token-1")));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void growsAndSurvivesNewIndexInstance() throws Exception {
+        ObjectVersionIndex index = new ObjectVersionIndex(file);
+        for (int i = 0; i < 5000; i++) {
+            index.update("id-" + i, ObjectVersionIndex.versionOf("token-" + i));
+        }
+        index.close();
+
+        ObjectVersionIndex reopened = new ObjectVersionIndex(file);
+        assertEquals(5000, reopened.size());
+        for (int i = 0; i < 5000; i++) {
+            assertFalse(reopened.update("id-" + i, ObjectVersionIndex.versionOf("token-" + i)));
+        }
+    }
+
+    @Test
+    public void compactionDropsObjectsNotSeenRecently() throws Exception {
+        ObjectVersionIndex index = new ObjectVersionIndex(file);
+        index.update("deleted", ObjectVersionIndex.versionOf("token"));
+        index.update("kept", ObjectVersionIndex.versionOf("token"));
+        index.nextGeneration();
+        index.update("kept", ObjectVersionIndex.versionOf("token"));
+        index.nextGeneration();
+
+        index.compact(1);
+
+        assertEquals(1, index.size());
+        assertFalse(index.update("kept", ObjectVersionIndex.versionOf("token")));
+        assertTrue(index.update("deleted", ObjectVersionIndex.versionOf("token")));
+    }
+}
@@ -0,0 +1,101 @@
+package org.apache.camel;
+
+import org.apache.chemistry.opencmis.client.api.ItemIterable;
+import org.apache.chemistry.opencmis.client.api.QueryResult;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pages through listings held in memory whose pages after the first one never arrive.
+ */
+public class PagingIteratorTest extends Assert {
+    private static final int PREFETCH_DEPTH = 2;
+
+    private final ExecutorService executorService = Executors.newFixedThreadPool(PREFETCH_DEPTH);
+    private final CountDownLatch prefetchesStarted = new CountDownLatch(PREFETCH_DEPTH);
+    private final CountDownLatch prefetchesCancelled = new CountDownLatch(PREFETCH_DEPTH);
+
+    @After
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void closingAnAbandonedIteratorCancelsThePrefetchedPages() throws Exception {
+        PagingIterator<String> items = new PagingIterator<String>(createListing(0, Arrays.asList("item-0", "item-1")),
+                2, PREFETCH_DEPTH, executorService);
+        assertEquals("item-0", items.next());
+        assertTrue(prefetchesStarted.await(5, TimeUnit.SECONDS));
+
+        items.close();
+
+        assertTrue("Prefetches were not cancelled", prefetchesCancelled.await(5, TimeUnit.SECONDS));
+        assertFalse(items.hasNext());
+    }
+
+    @Test
+    public void closingAnAbandonedQueryResultCancelsThePrefetchedPages() throws Exception {
+        QueryResult row = (QueryResult) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{QueryResult.class},
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        PagingIterator<QueryResult> pages = new PagingIterator<QueryResult>(createListing(0, Arrays.asList(row, row)),
+                2, PREFETCH_DEPTH, executorService);
+        QueryResultIterator rows = new QueryResultIterator(null, false, 0, pages);
+        assertTrue(rows.hasNext());
+        assertTrue(prefetchesStarted.await(5, TimeUnit.SECONDS));
+
+        rows.close();
+
+        assertTrue("Prefetches were not cancelled", prefetchesCancelled.await(5, TimeUnit.SECONDS));
+        assertFalse(rows.hasNext());
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> ItemIterable<T> createListing(final long offset, final List<T> page) {
+        return (ItemIterable<T>) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{ItemIterable.class},
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        String methodName = method.getName();
+                        if (methodName.equals("skipTo")) {
+                            return createListing((Long) args[0], page);
+                        }
+                        if (methodName.equals("getPage")) {
+                            return proxy;
+                        }
+                        if (methodName.equals("iterator")) {
+                            if (offset > 0) {
+                                awaitCancellation();
+                            }
+                            return page.iterator();
+                        }
+                        if (methodName.equals("getHasMoreItems")) {
+                            return true;
+                        }
+                        throw new UnsupportedOperationException(methodName);
+                    }
+                });
+    }
+
+    private void awaitCancellation() {
+        prefetchesStarted.countDown();
+        try {
+            Thread.sleep(60000);
+        } catch (InterruptedException e) {
+            prefetchesCancelled.countDown();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package org.apache.camel;
+
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.Document;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.ItemIterable;
+import org.apache.chemistry.opencmis.client.runtime.OperationContextImpl;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.apache.chemistry.opencmis.commons.enums.BaseTypeId;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.PropertyIdImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.PropertyStringImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Walks a wide folder tree held in memory, counting how many folders are listed ahead of the one being sent.
+ */
+public class ParallelTreeWalkerTest extends Assert {
+    private static final int LOOK_AHEAD = 2;
+    private static final int SUBFOLDERS = 100;
+
+    private final AtomicInteger listings = new AtomicInteger();
+    private final List<String> sent = new ArrayList<String>();
+    private int maxListedAhead;
+
+    @Test
+    public void orderedWalkListsOnlyAWindowOfFoldersAhead() throws Exception {
+        List<CmisObject> subfolders = new ArrayList<CmisObject>();
+        for (int i = 0; i < SUBFOLDERS; i++) {
+            subfolders.add(createFolder("folder-" + i, Collections.<CmisObject>emptyList()));
+        }
+        Folder root = createFolder("root", subfolders);
+
+        ExecutorService executorService = Executors.newFixedThreadPool(LOOK_AHEAD);
+        try {
+            ParallelTreeWalker walker = new ParallelTreeWalker(createConsumer(), false, 0, createOperationContext(),
+                    executorService, true, LOOK_AHEAD);
+            assertEquals(SUBFOLDERS + 1, walker.walk(root));
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        assertEquals("root", sent.get(0));
+        for (int i = 0; i < SUBFOLDERS; i++) {
+            assertEquals("folder-" + i, sent.get(i + 1));
+        }
+        assertTrue("Listed " + maxListedAhead + " folders ahead", maxListedAhead <= LOOK_AHEAD);
+    }
+
+    @Test
+    public void folderSubtypeIsWalkedAsAFolder() throws Exception {
+        List<CmisObject> documents = new ArrayList<CmisObject>();
+        documents.add(createDocument("document"));
+        Folder root = createFolder("root", Collections.<CmisObject>singletonList(
+                createFolder("custom", "custom:folder", documents)));
+
+        ExecutorService executorService = Executors.newFixedThreadPool(LOOK_AHEAD);
+        try {
+            ParallelTreeWalker walker = new ParallelTreeWalker(createConsumer(), false, 0, createOperationContext(),
+                    executorService, true, LOOK_AHEAD);
+            assertEquals(3, walker.walk(root));
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        assertEquals(Arrays.asList("root", "custom", "document"), sent);
+    }
+
+    private CMISConsumer createConsumer() {
+        CMISSessionFacade sessionFacade = new CMISSessionFacade("http://localhost/tree");
+        sessionFacade.setLazyStartup(true);
+        sessionFacade.initSession();
+        CMISEndpoint endpoint = new CMISEndpoint("cmis://http://localhost/tree", new CMISComponent(), sessionFacade);
+        endpoint.setCamelContext(new DefaultCamelContext());
+        return new CMISConsumer(endpoint, new Processor() {
+            public void process(Exchange exchange) throws Exception {
+                String name = exchange.getIn().getHeader(PropertyIds.NAME, String.class);
+                if (name.startsWith("folder-")) {
+                    // the root and the folders sent before this one have been listed, the rest is look-ahead
+                    int folderIndex = Integer.parseInt(name.substring("folder-".length()));
+                    maxListedAhead = Math.max(maxListedAhead, listings.get() - 1 - folderIndex);
+                }
+                sent.add(name);
+            }
+        }, sessionFacade);
+    }
+
+    private OperationContextImpl createOperationContext() {
+        OperationContextImpl operationContext = new OperationContextImpl();
+        operationContext.setMaxItemsPerPage(SUBFOLDERS);
+        return operationContext;
+    }
+
+    private Folder createFolder(String name, List<CmisObject> children) {
+        return createFolder(name, BaseTypeId.CMIS_FOLDER.value(), children);
+    }
+
+    private Folder createFolder(final String name, final String typeId, final List<CmisObject> children) {
+        return (Folder) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Folder.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String methodName = method.getName();
+                if (methodName.equals("getId") || methodName.equals("getName")) {
+                    return name;
+                }
+                if (methodName.equals("getPath")) {
+                    return "/" + name;
+                }
+                if (methodName.equals("getBaseTypeId")) {
+                    return BaseTypeId.CMIS_FOLDER;
+                }
+                if (methodName.equals("getProperties")) {
+                    return Arrays.asList(new PropertyStringImpl(PropertyIds.NAME, name),
+                            new PropertyIdImpl(PropertyIds.OBJECT_TYPE_ID, typeId));
+                }
+                if (methodName.equals("getChildren")) {
+                    listings.incrementAndGet();
+                    return createPage(children);
+                }
+                if (methodName.equals("getChangeToken") || methodName.equals("getLastModificationDate")) {
+                    return null;
+                }
+                throw new UnsupportedOperationException(methodName);
+            }
+        });
+    }
+
+    private Document createDocument(final String name) {
+        return (Document) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Document.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String methodName = method.getName();
+                if (methodName.equals("getId") || methodName.equals("getName")) {
+                    return name;
+                }
+                if (methodName.equals("getBaseTypeId")) {
+                    return BaseTypeId.CMIS_DOCUMENT;
+                }
+                if (methodName.equals("getProperties")) {
+                    return Collections.singletonList(new PropertyStringImpl(PropertyIds.NAME, name));
+                }
+                if (methodName.equals("getChangeToken") || methodName.equals("getLastModificationDate")) {
+                    return null;
+                }
+                throw new UnsupportedOperationException(methodName);
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private ItemIterable<CmisObject> createPage(final List<CmisObject> items) {
+        return (ItemIterable<CmisObject>) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{ItemIterable.class},
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        String methodName = method.getName();
+                        if (methodName.equals("skipTo") || methodName.equals("getPage")) {
+                            return proxy;
+                        }
+                        if (methodName.equals("iterator")) {
+                            return items.iterator();
+                        }
+                        if (methodName.equals("getHasMoreItems")) {
+                            return false;
+                        }
+                        throw new UnsupportedOperationException(methodName);
+                    }
+                });
+    }
+}
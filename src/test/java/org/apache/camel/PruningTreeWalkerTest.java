@@ -0,0 +1,211 @@
+package org.apache.camel;
+
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.FileableCmisObject;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.ItemIterable;
+import org.apache.chemistry.opencmis.client.api.Tree;
+import org.apache.chemistry.opencmis.client.runtime.OperationContextImpl;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.apache.chemistry.opencmis.commons.enums.BaseTypeId;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.PropertyStringImpl;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Walks a deep chain of folders held in memory, recording the depth of each folder tree fetched.
+ */
+public class PruningTreeWalkerTest extends Assert {
+    private static final int FOLDERS = 10;
+
+    private final List<Integer> folderTreeDepths = new ArrayList<Integer>();
+    private final List<String> sent = new ArrayList<String>();
+    private final List<Folder> chain = new ArrayList<Folder>();
+    private final List<List<Folder>> subfolders = new ArrayList<List<Folder>>();
+    private int listings;
+    private Folder root;
+
+    @Before
+    public void setUp() {
+        List<Folder> rootSubfolders = new ArrayList<Folder>();
+        root = createFolder("root", rootSubfolders);
+        List<Folder> parentSubfolders = rootSubfolders;
+        for (int i = 0; i < FOLDERS; i++) {
+            List<Folder> folderSubfolders = new ArrayList<Folder>();
+            Folder folder = createFolder("folder-" + i, folderSubfolders);
+            parentSubfolders.add(folder);
+            chain.add(folder);
+            subfolders.add(folderSubfolders);
+            parentSubfolders = folderSubfolders;
+        }
+    }
+
+    @Test
+    public void deepTreeIsFetchedInChunksOfBoundedDepth() throws Exception {
+        PruningTreeWalker walker = createWalker(createIndex("chunks.index"), createIndex("chunks.index.folders"));
+        assertEquals(FOLDERS + 1, walker.walk(root));
+
+        assertEquals("root", sent.get(0));
+        for (int i = 0; i < FOLDERS; i++) {
+            assertEquals("folder-" + i, sent.get(i + 1));
+        }
+        // the root, then the folders on the deepest level of each tree fetched
+        assertEquals(1 + FOLDERS / PruningTreeWalker.FOLDER_TREE_DEPTH, folderTreeDepths.size());
+        for (int depth : folderTreeDepths) {
+            assertEquals(PruningTreeWalker.FOLDER_TREE_DEPTH, depth);
+        }
+    }
+
+    @Test
+    public void removedFoldersAreCompactedFromTheFolderIndex() throws Exception {
+        ObjectVersionIndex index = createIndex("compaction.index");
+        ObjectVersionIndex folderIndex = createIndex("compaction.index.folders");
+        createWalker(index, folderIndex).walk(root);
+        index.nextGeneration();
+        folderIndex.nextGeneration();
+        // the version of each folder and the one its children were listed with
+        assertEquals(2 * (FOLDERS + 1), folderIndex.size());
+        assertEquals(0, index.size());
+
+        subfolders.get(4).clear();
+        sent.clear();
+        listings = 0;
+        assertEquals(0, createWalker(index, folderIndex).walk(root));
+        assertEquals(0, listings);
+        folderIndex.nextGeneration();
+        folderIndex.compact(1);
+        assertEquals(2 * 6, folderIndex.size());
+
+        index.close();
+        folderIndex.close();
+    }
+
+    private ObjectVersionIndex createIndex(String name) throws Exception {
+        File file = new File("target/index/pruning-walker-" + name);
+        file.delete();
+        return new ObjectVersionIndex(file);
+    }
+
+    private PruningTreeWalker createWalker(ObjectVersionIndex index, ObjectVersionIndex folderIndex) {
+        OperationContextImpl operationContext = new OperationContextImpl();
+        operationContext.setMaxItemsPerPage(FOLDERS);
+        PruningTreeWalker walker = new PruningTreeWalker(createConsumer(), false, 0, operationContext);
+        walker.setVersionIndex(index);
+        walker.setFolderIndex(folderIndex);
+        return walker;
+    }
+
+    private CMISConsumer createConsumer() {
+        CMISSessionFacade sessionFacade = new CMISSessionFacade("http://localhost/tree");
+        sessionFacade.setLazyStartup(true);
+        sessionFacade.initSession();
+        CMISEndpoint endpoint = new CMISEndpoint("cmis://http://localhost/tree", new CMISComponent(), sessionFacade);
+        endpoint.setCamelContext(new DefaultCamelContext());
+        return new CMISConsumer(endpoint, new Processor() {
+            public void process(Exchange exchange) throws Exception {
+                sent.add(exchange.getIn().getHeader(PropertyIds.NAME, String.class));
+            }
+        }, sessionFacade);
+    }
+
+    private Folder createFolder(final String name, final List<Folder> folderSubfolders) {
+        return (Folder) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Folder.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String methodName = method.getName();
+                if (methodName.equals("getId") || methodName.equals("getName")) {
+                    return name;
+                }
+                if (methodName.equals("getPath")) {
+                    return "/" + name;
+                }
+                if (methodName.equals("getBaseTypeId")) {
+                    return BaseTypeId.CMIS_FOLDER;
+                }
+                if (methodName.equals("getProperties")) {
+                    return Collections.singletonList(new PropertyStringImpl(PropertyIds.NAME, name));
+                }
+                if (methodName.equals("getChangeToken")) {
+                    return "1";
+                }
+                if (methodName.equals("getFolderTree")) {
+                    int depth = (Integer) args[0];
+                    folderTreeDepths.add(depth);
+                    return createTrees(folderSubfolders, depth);
+                }
+                if (methodName.equals("getChildren")) {
+                    listings++;
+                    return createPage(Collections.<CmisObject>emptyList());
+                }
+                throw new UnsupportedOperationException(methodName);
+            }
+        });
+    }
+
+    /**
+     * Like a repository, leaves out the subfolders of the folders on the deepest level.
+     */
+    private List<Tree<FileableCmisObject>> createTrees(List<Folder> folders, int depth) {
+        List<Tree<FileableCmisObject>> trees = new ArrayList<Tree<FileableCmisObject>>();
+        for (Folder folder : folders) {
+            List<Tree<FileableCmisObject>> children = depth > 1 ? createTrees(subfoldersOf(folder), depth - 1) : null;
+            trees.add(createTree(folder, children));
+        }
+        return trees;
+    }
+
+    private List<Folder> subfoldersOf(Folder folder) {
+        // the proxies do not implement equals
+        for (int i = 0; i < chain.size(); i++) {
+            if (chain.get(i) == folder) {
+                return subfolders.get(i);
+            }
+        }
+        throw new IllegalArgumentException(folder.getName());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Tree<FileableCmisObject> createTree(final Folder folder, final List<Tree<FileableCmisObject>> children) {
+        return (Tree<FileableCmisObject>) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Tree.class},
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("getItem")) {
+                            return folder;
+                        }
+                        if (method.getName().equals("getChildren")) {
+                            return children;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    @SuppressWarnings("unchecked")
+    private ItemIterable<CmisObject> createPage(final List<CmisObject> items) {
+        return (ItemIterable<CmisObject>) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{ItemIterable.class},
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        String methodName = method.getName();
+                        if (methodName.equals("skipTo") || methodName.equals("getPage")) {
+                            return proxy;
+                        }
+                        if (methodName.equals("iterator")) {
+                            return items.iterator();
+                        }
+                        if (methodName.equals("getHasMoreItems")) {
+                            return false;
+                        }
+                        throw new UnsupportedOperationException(methodName);
+                    }
+                });
+    }
+}
@@ -0,0 +1,240 @@
+package org.apache.camel;
+
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.chemistry.opencmis.client.api.ItemIterable;
+import org.apache.chemistry.opencmis.client.api.QueryResult;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.apache.chemistry.opencmis.commons.data.PropertyData;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisConstraintException;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.ContentStreamImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.PropertyIdImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.PropertyIntegerImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.RepositoryInfoImpl;
+import org.apache.chemistry.opencmis.commons.spi.CmisBinding;
+import org.apache.chemistry.opencmis.commons.spi.ObjectService;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Opens the content of query result rows against a session held in memory, which answers queries with
+ * a single row and otherwise only the getContentStream request of the object service.
+ */
+public class QueryResultContentTest extends Assert {
+    private static final String CONTENT = "query result content";
+
+    private final List<String> requestedObjectIds = new ArrayList<String>();
+    private final List<String> contentSessions = new ArrayList<String>();
+    private final List<String> contentRanges = new ArrayList<String>();
+    private CMISSessionFacade sessionFacade;
+
+    @Before
+    public void setUp() {
+        final Session session = createSession();
+        sessionFacade = new CMISSessionFacade("http://localhost/content") {
+            @Override
+            Session getSession() {
+                return session;
+            }
+        };
+        sessionFacade.setLazyStartup(true);
+        sessionFacade.initSession();
+    }
+
+    @Test
+    public void contentIsOpenedByObjectIdWithoutFetchingTheDocument() throws Exception {
+        InputStream inputStream = sessionFacade.getContentStreamFor(createRow("doc-1", CamelCMISConstants.CMIS_DOCUMENT, 20L));
+
+        assertEquals(CONTENT, readFully(inputStream));
+        assertEquals(Arrays.asList("doc-1"), requestedObjectIds);
+    }
+
+    @Test
+    public void documentWithoutContentHasNoStream() throws Exception {
+        assertNull(sessionFacade.getContentStreamFor(createRow("no-content", CamelCMISConstants.CMIS_DOCUMENT, null)));
+        // without an empty content length in the row, the repository is asked and answers with a constraint violation
+        assertNull(sessionFacade.getContentStreamFor(createRow("no-content", CamelCMISConstants.CMIS_DOCUMENT, 20L)));
+
+        assertEquals(Arrays.asList("no-content"), requestedObjectIds);
+    }
+
+    @Test
+    public void folderRowHasNoContent() throws Exception {
+        assertNull(sessionFacade.getContentStreamFor(createRow("folder-1", CamelCMISConstants.CMIS_FOLDER, null)));
+        assertTrue(requestedObjectIds.isEmpty());
+    }
+
+    @Test
+    public void streamedRowsReadTheirContentWithTheSessionOfTheQuery() throws Exception {
+        final Session[] pool = {createSession("first"), createSession("second")};
+        CMISSessionRegistry registry = new CMISSessionRegistry() {
+            private int next;
+
+            @Override
+            public Session getSession(Map<String, String> parameters) {
+                return pool[next++ % pool.length];
+            }
+        };
+        CMISSessionFacade pooledSessionFacade = new CMISSessionFacade("http://localhost/content");
+        pooledSessionFacade.setSessionRegistry(registry);
+        pooledSessionFacade.setLazyStartup(true);
+        pooledSessionFacade.initSession();
+
+        // like the query producer, which releases the session before the route reads the rows
+        assertTrue(pooledSessionFacade.pinSession());
+        String querySession = pooledSessionFacade.getSession().getRepositoryInfo().getProductName();
+        QueryResultIterator rows = pooledSessionFacade.iterateResult(true, 0, createListing(
+                createRow("doc-1", CamelCMISConstants.CMIS_DOCUMENT, 20L), createRow("doc-1", CamelCMISConstants.CMIS_DOCUMENT, 20L)), null);
+        pooledSessionFacade.releaseSession();
+        while (rows.hasNext()) {
+            readFully((InputStream) rows.next().get(CamelCMISConstants.CAMEL_CMIS_CONTENT_STREAM));
+        }
+
+        assertEquals(Arrays.asList(querySession, querySession), contentSessions);
+    }
+
+    @Test
+    public void contentRangeOfTheQueryProducerIsTakenFromTheExchange() throws Exception {
+        sessionFacade.setContentLength(8);
+        CMISEndpoint endpoint = new CMISEndpoint("cmis://http://localhost/content", new CMISComponent(), sessionFacade);
+        endpoint.setCamelContext(new DefaultCamelContext());
+        CMISQueryProducer producer = new CMISQueryProducer(endpoint, sessionFacade);
+
+        // the first chunk with the range of the endpoint, the next one further into the document
+        producer.process(createQueryExchange(endpoint, null));
+        producer.process(createQueryExchange(endpoint, 8L));
+
+        assertEquals(Arrays.asList("null-8", "8-8"), contentRanges);
+    }
+
+    private Exchange createQueryExchange(CMISEndpoint endpoint, Long contentOffset) {
+        Exchange exchange = endpoint.createExchange();
+        exchange.getIn().setBody("SELECT * FROM cmis:document");
+        exchange.getIn().setHeader(CamelCMISConstants.CAMEL_CMIS_RETRIEVE_CONTENT, true);
+        exchange.getIn().setHeader(CamelCMISConstants.CAMEL_CMIS_CONTENT_OFFSET, contentOffset);
+        return exchange;
+    }
+
+    private String readFully(InputStream inputStream) throws Exception {
+        StringBuilder content = new StringBuilder();
+        int c;
+        while ((c = inputStream.read()) != -1) {
+            content.append((char) c);
+        }
+        inputStream.close();
+        return content.toString();
+    }
+
+    private QueryResult createRow(String objectId, String baseTypeId, Long contentStreamLength) {
+        final Map<String, PropertyData<?>> properties = new HashMap<String, PropertyData<?>>();
+        properties.put(PropertyIds.OBJECT_ID, new PropertyIdImpl(PropertyIds.OBJECT_ID, objectId));
+        properties.put(PropertyIds.BASE_TYPE_ID, new PropertyIdImpl(PropertyIds.BASE_TYPE_ID, baseTypeId));
+        properties.put(PropertyIds.CONTENT_STREAM_LENGTH, new PropertyIntegerImpl(PropertyIds.CONTENT_STREAM_LENGTH,
+                contentStreamLength != null ? BigInteger.valueOf(contentStreamLength) : null));
+
+        return (QueryResult) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{QueryResult.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("getProperties")) {
+                    return new ArrayList<PropertyData<?>>(properties.values());
+                }
+                PropertyData<?> property = properties.get(args[0]);
+                if (method.getName().equals("getPropertyById")) {
+                    return property;
+                }
+                if (method.getName().equals("getPropertyValueById")) {
+                    return property != null ? property.getFirstValue() : null;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private ItemIterable<QueryResult> createListing(QueryResult... rows) {
+        final List<QueryResult> page = Arrays.asList(rows);
+        return (ItemIterable<QueryResult>) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{ItemIterable.class},
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        String methodName = method.getName();
+                        if (methodName.equals("skipTo") || methodName.equals("getPage")) {
+                            return proxy;
+                        }
+                        if (methodName.equals("iterator")) {
+                            return page.iterator();
+                        }
+                        if (methodName.equals("getHasMoreItems")) {
+                            return false;
+                        }
+                        throw new UnsupportedOperationException(methodName);
+                    }
+                });
+    }
+
+    private Session createSession() {
+        return createSession("session");
+    }
+
+    private Session createSession(final String name) {
+        final RepositoryInfoImpl repositoryInfo = new RepositoryInfoImpl();
+        repositoryInfo.setId("content");
+        repositoryInfo.setProductName(name);
+        final ObjectService objectService = (ObjectService) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{ObjectService.class}, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("getContentStream")) {
+                            String objectId = (String) args[1];
+                            requestedObjectIds.add(objectId);
+                            contentSessions.add(name);
+                            contentRanges.add(args[3] + "-" + args[4]);
+                            if (!objectId.equals("doc-1")) {
+                                throw new CmisConstraintException("Document " + objectId + " has no content");
+                            }
+                            return new ContentStreamImpl("doc-1.txt", BigInteger.valueOf(CONTENT.length()), "text/plain",
+                                    new ByteArrayInputStream(CONTENT.getBytes("UTF-8")));
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        final CmisBinding binding = (CmisBinding) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{CmisBinding.class}, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("getObjectService")) {
+                            return objectService;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+
+        return (Session) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Session.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("getRepositoryInfo")) {
+                    return repositoryInfo;
+                }
+                if (method.getName().equals("getBinding")) {
+                    return binding;
+                }
+                if (method.getName().equals("query")) {
+                    return createListing(createRow("doc-1", CamelCMISConstants.CMIS_DOCUMENT, 20L));
+                }
+                if (method.getName().equals("getTypeDefinition")) {
+                    // the definitions of the base types loaded when connecting
+                    return null;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+}
@@ -0,0 +1,102 @@
+package org.apache.camel;
+
+import org.junit.Test;
+
+import java.util.GregorianCalendar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class QueryWatermarkTest {
+    private static final String ORDER = " ORDER BY cmis:lastModificationDate ASC, cmis:objectId ASC";
+
+    @Test
+    public void firstQueryIsOnlyOrdered() {
+        QueryWatermark watermark = QueryWatermark.fromCheckpoint(null);
+
+        assertEquals("SELECT * FROM cmis:document" + ORDER, watermark.applyTo("SELECT * FROM cmis:document"));
+    }
+
+    @Test
+    public void existingConditionIsKeptTogether() {
+        QueryWatermark watermark = QueryWatermark.fromCheckpoint("0");
+
+        assertEquals("SELECT * FROM cmis:document WHERE cmis:lastModificationDate >= TIMESTAMP '1970-01-01T00:00:00.000Z'"
+                + " AND (cmis:name = 'a' OR cmis:name = 'b')" + ORDER,
+                watermark.applyTo("SELECT * FROM cmis:document WHERE cmis:name = 'a' OR cmis:name = 'b'"));
+    }
+
+    @Test
+    public void keywordsAreFoundNextToAnyWhitespace() {
+        QueryWatermark watermark = QueryWatermark.fromCheckpoint("0");
+
+        assertEquals("SELECT * FROM cmis:document\nWHERE cmis:lastModificationDate >= TIMESTAMP '1970-01-01T00:00:00.000Z'"
+                + " AND (cmis:name = 'a')" + ORDER,
+                watermark.applyTo("SELECT * FROM cmis:document\nwhere\tcmis:name = 'a'\n"));
+        try {
+            watermark.applyTo("SELECT * FROM cmis:document\tORDER\nBY cmis:name");
+            fail("ORDER BY clause accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void keywordsInLiteralsAreIgnored() {
+        QueryWatermark watermark = QueryWatermark.fromCheckpoint("0");
+
+        assertEquals("SELECT * FROM cmis:document WHERE cmis:lastModificationDate >= TIMESTAMP '1970-01-01T00:00:00.000Z'"
+                + " AND (CONTAINS('where to order by date') AND cmis:name <> 'it\\'s where')" + ORDER,
+                watermark.applyTo("SELECT * FROM cmis:document WHERE CONTAINS('where to order by date') AND cmis:name <> 'it\\'s where'"));
+        assertEquals("SELECT * FROM cmis:document WHERE cmis:lastModificationDate >= TIMESTAMP '1970-01-01T00:00:00.000Z'"
+                + " AND (cmis:name = ' order by ')" + ORDER,
+                watermark.applyTo("SELECT * FROM cmis:document WHERE cmis:name = ' order by '"));
+    }
+
+    @Test
+    public void nextQueryStartsAfterLastObjectWithSameDate() {
+        GregorianCalendar modified = new GregorianCalendar();
+        modified.setTimeInMillis(0);
+        QueryWatermark watermark = QueryWatermark.fromCheckpoint(null);
+        watermark.advance("id-1", modified);
+        watermark.advance("id-2", modified);
+
+        assertEquals(1, watermark.getObjectIdsAtTimeCount());
+        assertEquals("SELECT * FROM cmis:document WHERE (cmis:lastModificationDate > TIMESTAMP '1970-01-01T00:00:00.000Z'"
+                + " OR (cmis:lastModificationDate = TIMESTAMP '1970-01-01T00:00:00.000Z' AND cmis:objectId > 'id-2'))" + ORDER,
+                watermark.applyTo("SELECT * FROM cmis:document"));
+    }
+
+    @Test
+    public void objectIdsAtTimeAreBoundedWithoutObjectIdOrder() {
+        GregorianCalendar modified = new GregorianCalendar();
+        QueryWatermark watermark = QueryWatermark.fromCheckpoint(null);
+        watermark.setOrderedByObjectId(false);
+        for (int i = 0; i < QueryWatermark.MAX_OBJECT_IDS_AT_TIME; i++) {
+            watermark.advance("id-" + i, modified);
+        }
+        try {
+            watermark.advance("one-too-many", modified);
+            fail("Watermark grew past its bound");
+        } catch (IllegalStateException e) {
+            assertEquals(QueryWatermark.MAX_OBJECT_IDS_AT_TIME, watermark.getObjectIdsAtTimeCount());
+        }
+    }
+
+    @Test
+    public void objectsAtWatermarkSurviveCheckpoint() {
+        GregorianCalendar modified = new GregorianCalendar();
+        QueryWatermark watermark = QueryWatermark.fromCheckpoint(null);
+        watermark.setOrderedByObjectId(false);
+        watermark.advance("id-1", modified);
+        watermark.advance("id-2", modified);
+
+        QueryWatermark restored = QueryWatermark.fromCheckpoint(watermark.toCheckpoint());
+
+        assertTrue(restored.isDelivered("id-1", modified));
+        assertTrue(restored.isDelivered("id-2", modified));
+        assertFalse(restored.isDelivered("id-3", modified));
+    }
+}
@@ -0,0 +1,124 @@
+package org.apache.camel;
+
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.FolderType;
+import org.apache.chemistry.opencmis.client.api.ObjectType;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.enums.BaseTypeId;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Checks the type definition cache and the handling of folder subtypes against a session held in memory.
+ */
+public class TypeDefinitionCacheTest extends Assert {
+    private static final String CUSTOM_FOLDER = "custom:folder";
+
+    private int typeDefinitionsLoaded;
+
+    @Test
+    public void definitionIsLoadedOnceWithoutRefreshInterval() throws Exception {
+        TypeDefinitionCache cache = new TypeDefinitionCache(0);
+        Session session = createSession();
+
+        ObjectType type = cache.getType(session, CUSTOM_FOLDER);
+        Thread.sleep(20);
+
+        assertSame(type, cache.getType(session, CUSTOM_FOLDER));
+        assertEquals(1, typeDefinitionsLoaded);
+    }
+
+    @Test
+    public void definitionIsLoadedAgainAfterRefreshInterval() throws Exception {
+        TypeDefinitionCache cache = new TypeDefinitionCache(10);
+        Session session = createSession();
+
+        ObjectType type = cache.getType(session, CUSTOM_FOLDER);
+        assertSame(type, cache.getType(session, CUSTOM_FOLDER));
+        Thread.sleep(20);
+
+        assertNotSame(type, cache.getType(session, CUSTOM_FOLDER));
+        assertEquals(2, typeDefinitionsLoaded);
+    }
+
+    @Test
+    public void folderSubtypeHasFolderBaseType() throws Exception {
+        TypeDefinitionCache cache = new TypeDefinitionCache(0);
+
+        assertEquals(BaseTypeId.CMIS_FOLDER, cache.getBaseTypeId(createSession(), CUSTOM_FOLDER));
+        assertFalse(cache.isVersionable(createSession(), CUSTOM_FOLDER));
+    }
+
+    @Test
+    public void folderSubtypeIsFoundByPath() throws Exception {
+        final Session session = createSession();
+        CMISSessionFacade sessionFacade = new CMISSessionFacade("http://localhost/types") {
+            @Override
+            Session getSession() {
+                return session;
+            }
+        };
+        sessionFacade.setLazyStartup(true);
+        sessionFacade.initSession();
+
+        assertEquals("custom-folder-id", sessionFacade.getFolderIdByPath("/custom"));
+    }
+
+    private Session createSession() {
+        return (Session) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Session.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String methodName = method.getName();
+                if (methodName.equals("getTypeDefinition")) {
+                    typeDefinitionsLoaded++;
+                    return createFolderType((String) args[0]);
+                }
+                if (methodName.equals("getObjectByPath") && args.length == 2 && args[1] instanceof OperationContext) {
+                    return createFolder((String) args[0]);
+                }
+                throw new UnsupportedOperationException(methodName);
+            }
+        });
+    }
+
+    private FolderType createFolderType(final String typeId) {
+        return (FolderType) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{FolderType.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String methodName = method.getName();
+                if (methodName.equals("getId")) {
+                    return typeId;
+                }
+                if (methodName.equals("getBaseTypeId")) {
+                    return BaseTypeId.CMIS_FOLDER;
+                }
+                throw new UnsupportedOperationException(methodName);
+            }
+        });
+    }
+
+    private CmisObject createFolder(final String path) {
+        return (Folder) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Folder.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String methodName = method.getName();
+                if (methodName.equals("getId")) {
+                    return "custom-folder-id";
+                }
+                if (methodName.equals("getPath")) {
+                    return path;
+                }
+                if (methodName.equals("getBaseTypeId")) {
+                    return BaseTypeId.CMIS_FOLDER;
+                }
+                if (methodName.equals("getType")) {
+                    return createFolderType(CUSTOM_FOLDER);
+                }
+                throw new UnsupportedOperationException(methodName);
+            }
+        });
+    }
+}